@@ -0,0 +1,54 @@
+package com.buaisociety.snake.benchmarks;
+
+import com.buaisociety.snake.Board;
+import org.joml.Vector2i;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures {@link Board#update()} and {@link Board#newFoodLocation()}.
+ *
+ * <p>The snake follows a {@link CycleBehavior}, so it eats every food it
+ * reaches and {@code length} is only its starting length. When the snake
+ * fills the board, the board is rebuilt with the same seed, so every
+ * iteration plays the same games.
+ */
+@State(Scope.Thread)
+public class BoardBenchmark {
+
+    private static final long SEED = 1L;
+
+    @Param({"24", "48"})
+    public int size;
+
+    @Param({"3", "48", "400"})
+    public int length;
+
+    private CycleBehavior behavior;
+    private Board board;
+
+    @Setup
+    public void setup() {
+        behavior = new CycleBehavior(size, size);
+        board = new Board(size, size, behavior, SEED);
+        behavior.build(board, length);
+    }
+
+    @Benchmark
+    public boolean update() {
+        if (board.isFinished()) {
+            board.reset(behavior, SEED);
+            behavior.build(board, length);
+        }
+        board.update();
+        return board.isFinished();
+    }
+
+    @Benchmark
+    public Vector2i newFoodLocation() {
+        return board.newFoodLocation();
+    }
+}
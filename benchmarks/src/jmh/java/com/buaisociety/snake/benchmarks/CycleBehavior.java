@@ -0,0 +1,112 @@
+package com.buaisociety.snake.benchmarks;
+
+import com.buaisociety.snake.Board;
+import com.buaisociety.snake.Direction;
+import com.buaisociety.snake.Snake;
+import com.buaisociety.snake.behaviors.Behavior;
+
+/**
+ * Follows a Hamiltonian cycle through every cell of the board, so the snake
+ * never dies and the benchmarks measure the same work every tick. The cycle
+ * goes right along the bottom row, snakes up through columns {@code 1} to
+ * {@code width - 1}, and comes back down column {@code 0}, which needs an
+ * even height.
+ */
+public class CycleBehavior extends Behavior {
+
+    private final int width;
+    private final int[] cells;
+    private final Direction[] directions;
+
+    /**
+     * Creates the cycle for a board of the given size.
+     *
+     * @param width The width of the board, at least 2.
+     * @param height The height of the board, which must be even.
+     */
+    public CycleBehavior(int width, int height) {
+        if (width < 2 || height < 2 || height % 2 != 0)
+            throw new IllegalArgumentException("Need at least 2 columns and an even number of rows, got " + width + "x" + height);
+
+        this.width = width;
+        this.cells = new int[width * height];
+        this.directions = new Direction[width * height];
+
+        int x = 0;
+        int y = 0;
+        for (int i = 0; i < cells.length; i++) {
+            Direction direction = direction(x, y, width, height);
+            cells[i] = y * width + x;
+            directions[cells[i]] = direction;
+            x += direction.getDx();
+            y += direction.getDy();
+        }
+    }
+
+    private static Direction direction(int x, int y, int width, int height) {
+        if (x == 0)
+            return y == 0 ? Direction.RIGHT : Direction.DOWN;
+
+        if (y % 2 == 0)
+            return x == width - 1 ? Direction.UP : Direction.RIGHT;
+        else if (x == 1)
+            return y == height - 1 ? Direction.LEFT : Direction.UP;
+        else
+            return Direction.LEFT;
+    }
+
+    /**
+     * Returns the number of cells in the cycle.
+     *
+     * @return the number of cells in the cycle.
+     */
+    public int getLength() {
+        return cells.length;
+    }
+
+    /**
+     * Returns the x-coordinate of the given step of the cycle.
+     *
+     * @param index The step of the cycle, wrapped around its length.
+     * @return the x-coordinate of the step.
+     */
+    public int getX(int index) {
+        return cells[index % cells.length] % width;
+    }
+
+    /**
+     * Returns the y-coordinate of the given step of the cycle.
+     *
+     * @param index The step of the cycle, wrapped around its length.
+     * @return the y-coordinate of the step.
+     */
+    public int getY(int index) {
+        return cells[index % cells.length] / width;
+    }
+
+    /**
+     * Replaces the snake of the given board with one of the given length,
+     * lying on the first cells of the cycle with its head on cell
+     * {@code length - 1}.
+     *
+     * @param board The board, which must use this behavior.
+     * @param length The length of the snake, less than the board's area.
+     */
+    public void build(Board board, int length) {
+        if (length < Board.STARTING_LENGTH || length >= cells.length)
+            throw new IllegalArgumentException("Length must be in [" + Board.STARTING_LENGTH + ", " + cells.length + "), got " + length);
+
+        Snake snake = board.getSnake();
+        snake.reset();
+        snake.setMaxLength(length);
+        for (int i = 0; i < length; i++) {
+            snake.add(getX(i), getY(i));
+        }
+        snake.setCurrentDirection(directions[cells[length - 2]]);
+    }
+
+    @Override
+    public Direction getDirection() {
+        return directions[snake.getHeadCell()];
+    }
+}
@@ -0,0 +1,63 @@
+package com.buaisociety.snake.benchmarks;
+
+import com.buaisociety.snake.Trainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Measures a full headless generation: ticking every board of the population
+ * until every snake is dead, like {@code HeadlessTrainer} does, with the
+ * default starvation budget. Every invocation replays the same generation
+ * (see {@link Trainer#restartGeneration()}), so the board seeds are fixed.
+ * The population is never evolved.
+ */
+@State(Scope.Benchmark)
+public class GenerationBenchmark {
+
+    private static final long SEED = 1L;
+
+    @Param({"100", "1000"})
+    public int boards;
+
+    @Param({"1"})
+    public int threads;
+
+    private Path saveFolder;
+    private Trainer trainer;
+
+    @Setup
+    public void setup() throws IOException {
+        saveFolder = Files.createTempDirectory("snake-benchmark");
+        trainer = new Trainer(boards, threads, SEED, saveFolder.toFile());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        trainer.close();
+        try (Stream<Path> files = Files.walk(saveFolder)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public int generation() {
+        trainer.restartGeneration();
+        int ticks = 0;
+        while (trainer.tick()) {
+            ticks++;
+        }
+        return ticks;
+    }
+}
@@ -0,0 +1,49 @@
+package com.buaisociety.snake.benchmarks;
+
+import com.buaisociety.snake.Board;
+import com.buaisociety.snake.Snake;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures moving a snake: {@link Snake#update()}, which asks the behavior
+ * for a direction and checks for collisions, and {@link Snake#add(int, int)},
+ * which pushes a head and drops the tail. The snake follows a
+ * {@link CycleBehavior}, so it stays at the same length and never dies.
+ */
+@State(Scope.Thread)
+public class SnakeBenchmark {
+
+    @Param({"24", "48"})
+    public int size;
+
+    @Param({"3", "48", "400"})
+    public int length;
+
+    private CycleBehavior behavior;
+    private Snake snake;
+    private int next;
+
+    @Setup
+    public void setup() {
+        behavior = new CycleBehavior(size, size);
+        Board board = new Board(size, size, behavior, 1L);
+        behavior.build(board, length);
+        snake = board.getSnake();
+        next = length;
+    }
+
+    @Benchmark
+    public void update() {
+        snake.update();
+    }
+
+    @Benchmark
+    public void add() {
+        snake.add(behavior.getX(next), behavior.getY(next));
+        next = (next + 1) % behavior.getLength();
+    }
+}
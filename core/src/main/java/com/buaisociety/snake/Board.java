@@ -6,46 +6,138 @@ import com.buaisociety.snake.behaviors.Behavior;
 import org.joml.Vector2i;
 import org.joml.Vector2ic;
 
-import java.util.Random;
-
 /**
- * Represents a game board
+ * Represents a game board. A board is a view over one game of a
+ * {@link Simulation}; boards created with the public constructor get a
+ * simulation of their own.
  */
 public class Board {
 
-    private final Random random;
+    public static final int STARTING_LENGTH = 3;
+
+    private final Simulation simulation;
+    private final int index;
 
     private final int width;
     private final int height;
 
-    private Snake snake;
-    private Vector2i foodLocation;
+    private final Snake snake;
+    private final Vector2i foodLocation;
 
     public Board(int width, int height, Behavior snakeBehavior) {
-        this.random = new Random();
+        this(width, height, snakeBehavior, Seeds.random());
+    }
 
-        this.width = width;
-        this.height = height;
+    public Board(int width, int height, Behavior snakeBehavior, long seed) {
+        this(new Simulation(width, height, 1), 0);
+        reset(snakeBehavior, seed);
+    }
+
+    /**
+     * Creates the view of one game of a simulation. The game stays empty
+     * until {@link #reset(Behavior, long)} is called.
+     *
+     * @param simulation The simulation that stores the state of the game.
+     * @param index The index of the game in the simulation.
+     */
+    Board(Simulation simulation, int index) {
+        this.simulation = simulation;
+        this.index = index;
+        this.width = simulation.getWidth();
+        this.height = simulation.getHeight();
+        this.foodLocation = new Vector2i();
+        simulation.register(index, this);
 
         // Create the snake
-        this.snake = new Snake(this, 3, snakeBehavior);
-        snakeBehavior.setSnake(snake);
+        this.snake = new Snake(this, STARTING_LENGTH, null);
+    }
 
-        // Build the snake
+    private void buildSnake() {
         int y = height / 2;
-        this.snake.add(new Vector2i(0, y));
-        this.snake.add(new Vector2i(1, y));
-        this.snake.add(new Vector2i(2, y));
+        this.snake.add(0, y);
+        this.snake.add(1, y);
+        this.snake.add(2, y);
+    }
+
+    /**
+     * Resets this board to the state of a newly constructed board, reusing
+     * the snake and its backing storage instead of allocating new ones. This
+     * lets boards be pooled across generations (see {@link BoardPool}).
+     *
+     * @param snakeBehavior The behavior of the snake for the next game.
+     * @param seed The seed for the random number generator.
+     */
+    public void reset(Behavior snakeBehavior, long seed) {
+        simulation.resetBoard(index, seed);
+
+        snake.reset();
+        snake.setBehavior(snakeBehavior);
+        snakeBehavior.setSnake(snake);
+        buildSnake();
     }
 
     /**
-     * Returns the random number generator used in this board. You can reseed
-     * this generator using {@link Random#setSeed(long)}.
+     * Returns the simulation that stores the state of this board.
      *
-     * @return the random number generator.
+     * @return the simulation that stores the state of this board.
      */
-    public Random getRandom() {
-        return random;
+    public Simulation getSimulation() {
+        return simulation;
+    }
+
+    /**
+     * Returns the index of this board's game in its simulation.
+     *
+     * @return the index of this board's game.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the seed this board was last reset with. Resetting the board
+     * with the same seed and an equivalent behavior replays the same game.
+     *
+     * @return the seed of this board.
+     */
+    public long getSeed() {
+        return simulation.getSeed(index);
+    }
+
+    /**
+     * Returns a counter that changes whenever the snake moves, the food moves,
+     * the snake's color changes or the board is reset. Renderers compare it
+     * with the version they last drew to skip boards that did not change.
+     *
+     * @return the version of the board's visible state.
+     */
+    public int getVersion() {
+        return simulation.getVersion(index);
+    }
+
+    /**
+     * Returns the number of moves recorded since the board was last reset.
+     * Always 0 unless the simulation is recording (see
+     * {@link Simulation#setRecording(boolean)}).
+     *
+     * @return the number of recorded moves.
+     */
+    public int getMoveCount() {
+        return simulation.getMoveCount(index);
+    }
+
+    /**
+     * Returns the direction the snake moved in on the given recorded move.
+     *
+     * @param move The index of the move, starting at 0.
+     * @return the direction of the move.
+     */
+    public Direction getMove(int move) {
+        int count = getMoveCount();
+        if (move < 0 || move >= count)
+            throw new IndexOutOfBoundsException("Move " + move + " out of bounds for " + count + " moves");
+
+        return simulation.getMove(index, move);
     }
 
     /**
@@ -66,6 +158,16 @@ public class Board {
         return height;
     }
 
+    /**
+     * Returns the neighbor lookup table for this board's dimensions. The table
+     * is shared by every board with the same width and height.
+     *
+     * @return the neighbor lookup table.
+     */
+    public NeighborTable getNeighbors() {
+        return simulation.getNeighbors();
+    }
+
     /**
      * Returns the snake on the board.
      *
@@ -76,12 +178,29 @@ public class Board {
     }
 
     /**
-     * Returns the location of the food.
+     * Returns the location of the food, or null if the food has not been
+     * placed yet. The returned vector is updated in place, so copy it if you
+     * need to remember a position.
      *
      * @return the location of the food.
      */
     public Vector2ic getFoodLocation() {
-        return foodLocation;
+        int cell = simulation.getFood(index);
+        if (cell < 0)
+            return null;
+
+        NeighborTable neighbors = simulation.getNeighbors();
+        return foodLocation.set(neighbors.getX(cell), neighbors.getY(cell));
+    }
+
+    /**
+     * Returns the packed cell index ({@code y * width + x}) of the food, or -1
+     * if the food has not been placed yet.
+     *
+     * @return the packed cell index of the food.
+     */
+    public int getFoodCell() {
+        return simulation.getFood(index);
     }
 
     /**
@@ -90,47 +209,60 @@ public class Board {
      * @param foodLocation The new location of the food.
      */
     public void setFoodLocation(Vector2i foodLocation) {
-        this.foodLocation = foodLocation;
+        simulation.setFood(index, foodLocation == null ? -1 : foodLocation.y * width + foodLocation.x);
     }
 
     /**
      * Returns a possible new location for the food to spawn. The location is
-     * guaranteed to not be inside the snake.
+     * guaranteed to not be inside the snake. Every free cell is equally
+     * likely, and picking one takes constant time no matter how long the
+     * snake is.
      *
-     * @return a possible new location for the food to spawn.
+     * @return a possible new location for the food to spawn, or null if the
+     *         snake fills the whole board.
      */
     public Vector2i newFoodLocation() {
-        Vector2i newFoodLocation;
-        do {
-            newFoodLocation = new Vector2i(random.nextInt(width), random.nextInt(height));
-        } while (snake.contains(newFoodLocation));
-        return newFoodLocation;
+        int cell = simulation.newFoodCell(index);
+        if (cell < 0)
+            return null;
+
+        NeighborTable neighbors = simulation.getNeighbors();
+        return new Vector2i(neighbors.getX(cell), neighbors.getY(cell));
     }
 
     /**
-     * Updates the state of the game.
+     * Returns whether the snake filled the whole board. A won game is over,
+     * but the snake is not dead.
+     *
+     * @return whether the snake filled the whole board.
      */
-    public void update() {
-        // Happens when the Board is first initialized. We don't set the food
-        // location in the constructor because we need the snake to be initialized.
-        // This also allows the Random number generator to be reseeded.
-        if (foodLocation == null) {
-            foodLocation = newFoodLocation();
-        }
+    public boolean isWon() {
+        return simulation.isWon(index);
+    }
 
-        // When we eat food, we increase the length of the snake and move the food
-        if (snake.getHead().equals(foodLocation)) {
-            snake.setMaxLength(snake.getMaxLength() + 1);
-            foodLocation = newFoodLocation();
-        }
+    /**
+     * Returns whether the game is over, either because the snake died or
+     * because it filled the whole board.
+     *
+     * @return whether the game is over.
+     */
+    public boolean isFinished() {
+        return !simulation.isAlive(index);
+    }
 
-        // Move the snake
-        snake.update();
+    /**
+     * Updates the state of the game. When updating many boards, prefer
+     * {@link Simulation#update(int, int)}, which does the same thing for a
+     * whole range of boards.
+     */
+    public void update() {
+        simulation.update(index);
     }
 
     public void render(SpriteBatch batch) {
+        Vector2ic foodLocation = getFoodLocation();
         if (foodLocation != null) {
-            RenderUtil.drawPixel(batch, foodLocation.x, foodLocation.y, Color.RED);
+            RenderUtil.drawPixel(batch, foodLocation.x(), foodLocation.y(), Color.RED);
         }
 
         snake.render(batch);
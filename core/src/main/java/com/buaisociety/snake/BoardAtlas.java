@@ -0,0 +1,178 @@
+package com.buaisociety.snake;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.utils.Disposable;
+
+/**
+ * Renders many boards from a single texture. Every visible board owns a slot
+ * of a shared {@link Pixmap}, with one pixel per cell, and the snake and food
+ * are written straight into those pixels. The pixmap is uploaded to the GPU
+ * once per frame, and each board is drawn as a single quad, so the cost of a
+ * frame does not grow with the length of the snakes:
+ * <pre>{@code
+ *     BoardAtlas atlas = new BoardAtlas(24, 24, 20, 15);
+ *
+ *     // every frame
+ *     atlas.update(snapshot);
+ *     for (int slot = 0; slot < atlas.getSlotCount(); slot++) {
+ *         atlas.draw(batch, slot, x, y);
+ *     }
+ * }</pre>
+ *
+ * <p>Boards are read from a {@link BoardSnapshot}, so the atlas can be updated
+ * on the render thread while the boards keep changing on the simulation
+ * thread. Only boards whose {@link Board#getVersion()} changed since they
+ * were last written are redrawn into the pixmap, and nothing is uploaded when no board
+ * changed. Empty cells are transparent, so a background drawn before the atlas
+ * shows through.
+ */
+public class BoardAtlas implements Disposable {
+
+    private static final int FOOD_COLOR = Color.rgba8888(Color.RED);
+
+    private final int boardWidth;
+    private final int boardHeight;
+    private final int columns;
+    private final int rows;
+    private final Pixmap pixmap;
+    private final Texture texture;
+
+    private final Board[] drawnBoards;
+    private final int[] drawnVersions;
+    private int dirtyCount;
+
+    /**
+     * Creates an atlas with {@code columns * rows} board slots. Slot
+     * {@code i} is at column {@code i % columns} and row {@code i / columns}.
+     *
+     * @param boardWidth The width of every board, in cells.
+     * @param boardHeight The height of every board, in cells.
+     * @param columns The number of slots per row.
+     * @param rows The number of rows of slots.
+     */
+    public BoardAtlas(int boardWidth, int boardHeight, int columns, int rows) {
+        this.boardWidth = boardWidth;
+        this.boardHeight = boardHeight;
+        this.columns = columns;
+        this.rows = rows;
+
+        this.pixmap = new Pixmap(boardWidth * columns, boardHeight * rows, Pixmap.Format.RGBA8888);
+        this.pixmap.setBlending(Pixmap.Blending.None);
+        this.pixmap.setColor(Color.CLEAR);
+        this.pixmap.fill();
+        this.texture = new Texture(pixmap);
+        this.texture.setFilter(Texture.TextureFilter.Nearest, Texture.TextureFilter.Nearest);
+
+        this.drawnBoards = new Board[columns * rows];
+        this.drawnVersions = new int[columns * rows];
+    }
+
+    /**
+     * Returns the number of board slots.
+     *
+     * @return the number of board slots.
+     */
+    public int getSlotCount() {
+        return drawnBoards.length;
+    }
+
+    /**
+     * Returns the number of slots per row.
+     *
+     * @return the number of slots per row.
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns the number of rows of slots.
+     *
+     * @return the number of rows of slots.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns how many slots the last {@link #update(BoardSnapshot)} rewrote.
+     *
+     * @return the number of rewritten slots.
+     */
+    public int getDirtyCount() {
+        return dirtyCount;
+    }
+
+    /**
+     * Writes every board of the snapshot that changed since it was last
+     * written into its slot, and uploads the texture if anything changed.
+     * Board {@code i} goes into slot {@code i}; boards past the last slot are
+     * ignored, and slots past the last board are cleared.
+     *
+     * @param snapshot The boards to show.
+     */
+    public void update(BoardSnapshot snapshot) {
+        dirtyCount = 0;
+        int boardCount = Math.min(snapshot.getBoardCount(), drawnBoards.length);
+        for (int slot = 0; slot < drawnBoards.length; slot++) {
+            Board board = slot < boardCount ? snapshot.getBoard(slot) : null;
+            if (board == drawnBoards[slot] && (board == null || snapshot.getVersion(slot) == drawnVersions[slot]))
+                continue;
+
+            write(slot, board == null ? null : snapshot);
+            drawnBoards[slot] = board;
+            drawnVersions[slot] = board == null ? 0 : snapshot.getVersion(slot);
+            dirtyCount++;
+        }
+
+        if (dirtyCount > 0)
+            texture.draw(pixmap, 0, 0);
+    }
+
+    private void write(int slot, BoardSnapshot snapshot) {
+        int left = (slot % columns) * boardWidth;
+        int top = (slot / columns) * boardHeight;
+
+        pixmap.setColor(Color.CLEAR);
+        pixmap.fillRectangle(left, top, boardWidth, boardHeight);
+        if (snapshot == null)
+            return;
+
+        // Pixmaps start at the top left, boards at the bottom left
+        int bottom = top + boardHeight - 1;
+        int food = snapshot.getFood(slot);
+        if (food >= 0) {
+            pixmap.drawPixel(left + food % boardWidth, bottom - food / boardWidth, FOOD_COLOR);
+        }
+
+        // The snake is drawn over the food, like in Board#render
+        int color = snapshot.getColor(slot);
+        for (int i = 0; i < snapshot.getLength(slot); i++) {
+            int cell = snapshot.getSegment(slot, i);
+            pixmap.drawPixel(left + cell % boardWidth, bottom - cell / boardWidth, color);
+        }
+    }
+
+    /**
+     * Draws one slot as a single quad, one world unit per cell.
+     *
+     * @param batch The sprite batch to draw with.
+     * @param slot The slot to draw.
+     * @param x The x-coordinate of the bottom left corner of the board.
+     * @param y The y-coordinate of the bottom left corner of the board.
+     */
+    public void draw(SpriteBatch batch, int slot, float x, float y) {
+        int left = (slot % columns) * boardWidth;
+        int top = (slot / columns) * boardHeight;
+        batch.draw(texture, x, y, boardWidth, boardHeight, left, top, boardWidth, boardHeight, false, false);
+    }
+
+    @Override
+    public void dispose() {
+        texture.dispose();
+        pixmap.dispose();
+    }
+}
@@ -0,0 +1,382 @@
+package com.buaisociety.snake;
+
+import com.buaisociety.snake.behaviors.NeatBehavior;
+import com.buaisociety.snake.network.CompiledNetwork;
+import com.buaisociety.snake.network.NetworkCompiler;
+import com.buaisociety.snake.sensors.RaySensors;
+import com.cjcrafter.neat.Client;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the {@link Board}s of every client alive across generations. Instead
+ * of building a new board, snake and behavior for every client after each
+ * evolution, {@link #bind(List, long)} resets the existing boards in place and
+ * points their {@link NeatBehavior} at the new clients, so swapping
+ * generations allocates close to nothing.
+ *
+ * <p>Every client plays one board per episode of the pool's
+ * {@link Evaluation}. The boards of a client are next to each other, so board
+ * {@code client * episodes + episode} is one episode of one client, and
+ * {@link #writeScores()} aggregates them into the client's score.
+ *
+ * <p>The boards are views over a single {@link Simulation}, which is only
+ * rebuilt when the number of clients changes. When the pool has a
+ * {@link NetworkCompiler}, every client's network is compiled on bind.
+ */
+public class BoardPool {
+
+    private final int width;
+    private final int height;
+    private final RaySensors sensors;
+    private final NetworkCompiler compiler;
+    private final List<Board> boards;
+    private Simulation simulation;
+    private StarvationBudget starvationBudget;
+    private boolean recording;
+    private Evaluation evaluation;
+    private List<Client> clients;
+    private int clientCount;
+    private int episodes;
+    private double[] scores;
+
+    /**
+     * Creates an empty pool of boards with the given dimensions.
+     *
+     * @param width The width of every board.
+     * @param height The height of every board.
+     * @param sensors The sensors used by every {@link NeatBehavior}.
+     * @param compiler Compiles the clients' networks, or null to evaluate
+     *                 every client's network directly.
+     */
+    public BoardPool(int width, int height, RaySensors sensors, @Nullable NetworkCompiler compiler) {
+        this.width = width;
+        this.height = height;
+        this.sensors = sensors;
+        this.compiler = compiler;
+        this.boards = new ArrayList<>();
+        this.starvationBudget = StarvationBudget.UNLIMITED;
+        this.evaluation = Evaluation.SINGLE;
+        this.clients = List.of();
+        this.episodes = 1;
+        this.scores = new double[1];
+    }
+
+    /**
+     * Returns the simulation that stores the state of the pooled boards, or
+     * null before the first {@link #bind(List, long)}.
+     *
+     * @return the simulation behind the pooled boards.
+     */
+    public Simulation getSimulation() {
+        return simulation;
+    }
+
+    /**
+     * Returns how many steps snakes may take without eating.
+     *
+     * @return the starvation budget.
+     */
+    public StarvationBudget getStarvationBudget() {
+        return starvationBudget;
+    }
+
+    /**
+     * Sets how many steps snakes may take without eating. Running games
+     * switch to the new budget right away, see
+     * {@link Simulation#setStarvationBudget(StarvationBudget)}.
+     *
+     * @param starvationBudget the new starvation budget.
+     */
+    public void setStarvationBudget(StarvationBudget starvationBudget) {
+        this.starvationBudget = starvationBudget;
+        if (simulation != null)
+            simulation.setStarvationBudget(starvationBudget);
+    }
+
+    /**
+     * Returns whether the moves of every board are recorded.
+     *
+     * @return whether moves are recorded.
+     */
+    public boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * Sets whether the moves of every board are recorded, see
+     * {@link Simulation#setRecording(boolean)}. Used from the next
+     * {@link #bind(List, long)} on.
+     *
+     * @param recording whether to record moves.
+     */
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Returns how clients are scored.
+     *
+     * @return the evaluation mode.
+     */
+    public Evaluation getEvaluation() {
+        return evaluation;
+    }
+
+    /**
+     * Sets how clients are scored. The evaluation is used from the next
+     * {@link #bind(List, long)} on.
+     *
+     * @param evaluation the new evaluation mode.
+     */
+    public void setEvaluation(Evaluation evaluation) {
+        this.evaluation = evaluation;
+    }
+
+    /**
+     * Returns the number of episodes every client of the last
+     * {@link #bind(List, long)} plays.
+     *
+     * @return the number of boards per client.
+     */
+    public int getEpisodes() {
+        return episodes;
+    }
+
+    /**
+     * Returns the number of clients of the last {@link #bind(List, long)},
+     * or of networks of the last {@link #bind(CompiledNetwork[], int[], long)}.
+     *
+     * @return the number of clients.
+     */
+    public int getClientCount() {
+        return clientCount;
+    }
+
+    /**
+     * Returns the given client of the last {@link #bind(List, long)}.
+     *
+     * @param client The index of the client.
+     * @return the client.
+     */
+    public Client getClient(int client) {
+        return clients.get(client);
+    }
+
+    /**
+     * Returns the compiled network the given client plays with.
+     *
+     * @param client The index of the client.
+     * @return the compiled network, or null if the client's network is
+     *         evaluated directly.
+     */
+    public @Nullable CompiledNetwork getNetwork(int client) {
+        return ((NeatBehavior) getBoard(client, 0).getSnake().getBehavior()).getNetwork();
+    }
+
+    /**
+     * Returns the pooled boards. The board at index
+     * {@code client * getEpisodes() + episode} is played by the client at
+     * index {@code client} of the last {@link #bind(List, long)} call.
+     *
+     * @return the pooled boards.
+     */
+    public List<Board> getBoards() {
+        return boards;
+    }
+
+    /**
+     * Returns the board of one episode of one client.
+     *
+     * @param client The index of the client.
+     * @param episode The index of the episode.
+     * @return the board of the episode.
+     */
+    public Board getBoard(int client, int episode) {
+        return boards.get(client * episodes + episode);
+    }
+
+    /**
+     * Resets every board for a new game and binds the boards of every
+     * episode of client {@code i} to that client. Boards are only created
+     * when the number of boards changed.
+     *
+     * @param clients The clients of the new generation.
+     * @param generationSeed The seed of the new generation. Boards are seeded
+     *                       with {@link Evaluation#getSeed(long, int, int)}.
+     */
+    public void bind(List<Client> clients, long generationSeed) {
+        bind(clients, generationSeed, 0);
+    }
+
+    /**
+     * Binds the given slice of a population, where {@code clients.get(i)} is
+     * client {@code firstClient + i} of the whole population. Boards are
+     * seeded by that index, so evaluating a population in slices (e.g. on
+     * different workers, see {@link com.buaisociety.snake.distributed})
+     * plays the exact same games as evaluating it at once.
+     *
+     * @param clients The clients of the slice.
+     * @param generationSeed The seed of the new generation.
+     * @param firstClient The index of the first client in the population.
+     */
+    public void bind(List<Client> clients, long generationSeed, int firstClient) {
+        this.clients = clients;
+        resize(clients.size());
+
+        CompiledNetwork[] networks = compiler == null ? null : compiler.compileAll(clients);
+        for (int i = 0; i < clients.size(); i++) {
+            bind(i, clients.get(i), networks == null ? null : networks[i], generationSeed, firstClient + i);
+        }
+    }
+
+    /**
+     * Binds already compiled networks that have no {@link Client}, e.g. the
+     * networks a worker received (see {@link com.buaisociety.snake.distributed}).
+     * Network {@code i} is client {@code populationIndices[i]} of the whole
+     * population, and its boards are seeded by that index. Since there are
+     * no clients, read the results with {@link #getScore(int)} instead of
+     * {@link #writeScores()}.
+     *
+     * @param networks The network of every client.
+     * @param populationIndices The index of every client in the population.
+     * @param generationSeed The seed of the new generation.
+     */
+    public void bind(CompiledNetwork[] networks, int[] populationIndices, long generationSeed) {
+        if (networks.length != populationIndices.length)
+            throw new IllegalArgumentException("Expected an index for each of the " + networks.length + " networks");
+
+        this.clients = List.of();
+        resize(networks.length);
+        for (int i = 0; i < networks.length; i++) {
+            bind(i, null, networks[i], generationSeed, populationIndices[i]);
+        }
+    }
+
+    private void resize(int clientCount) {
+        this.clientCount = clientCount;
+        this.episodes = evaluation.getEpisodes();
+        if (scores.length != episodes)
+            scores = new double[episodes];
+
+        int boardCount = clientCount * episodes;
+        if (simulation == null || simulation.getCapacity() != boardCount) {
+            simulation = new Simulation(width, height, boardCount);
+            boards.clear();
+            for (int i = 0; i < boardCount; i++) {
+                boards.add(simulation.getBoard(i));
+            }
+        }
+        simulation.setStarvationBudget(starvationBudget);
+        simulation.setRecording(recording);
+    }
+
+    private void bind(int index, @Nullable Client client, @Nullable CompiledNetwork network,
+                      long generationSeed, int populationIndex) {
+        for (int episode = 0; episode < episodes; episode++) {
+            Board board = getBoard(index, episode);
+            NeatBehavior behavior;
+            if (board.getSnake().getBehavior() instanceof NeatBehavior existing) {
+                behavior = existing;
+                behavior.setClient(client);
+            } else {
+                behavior = new NeatBehavior(client, sensors);
+            }
+            behavior.setNetwork(network);
+            board.reset(behavior, evaluation.getSeed(generationSeed, populationIndex, episode));
+        }
+    }
+
+    /**
+     * Scores every client of the last {@link #bind(List, long)} by
+     * aggregating the scores of its episodes, and writes the result back with
+     * {@link Client#setScore(double)}. Call this once every board finished.
+     */
+    public void writeScores() {
+        for (int i = 0; i < clients.size(); i++) {
+            clients.get(i).setScore(getScore(i));
+        }
+    }
+
+    /**
+     * Aggregates the scores of every episode of the given client.
+     *
+     * @param client The index of the client.
+     * @return the client's score.
+     */
+    public double getScore(int client) {
+        for (int episode = 0; episode < episodes; episode++) {
+            scores[episode] = evaluation.getScore(getBoard(client, episode));
+        }
+        return evaluation.aggregate(scores);
+    }
+
+    /**
+     * Returns whether every episode of the given client is over.
+     *
+     * @param client The index of the client.
+     * @return whether the client's games are over.
+     */
+    public boolean isFinished(int client) {
+        for (int episode = 0; episode < episodes; episode++) {
+            if (!getBoard(client, episode).isFinished())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Starts new games for one client, e.g. after its genome was replaced.
+     * Its network is compiled again, and its boards are seeded like a
+     * {@link #bind(List, long)} with the given seed.
+     *
+     * @param client The index of the client.
+     * @param seed The seed of the new games.
+     */
+    public void reset(int client, long seed) {
+        CompiledNetwork network = compiler == null ? null : compiler.compile(clients.get(client));
+        for (int episode = 0; episode < episodes; episode++) {
+            Board board = getBoard(client, episode);
+            NeatBehavior behavior = (NeatBehavior) board.getSnake().getBehavior();
+            behavior.setNetwork(network);
+            board.reset(behavior, evaluation.getSeed(seed, client, episode));
+        }
+    }
+
+    /**
+     * Returns the number of games that are still running. This walks every
+     * board, so it is meant for reporting, not for every tick.
+     *
+     * @return the number of running games.
+     */
+    public int getAliveCount() {
+        int alive = 0;
+        for (Board board : boards) {
+            if (!board.isFinished())
+                alive++;
+        }
+        return alive;
+    }
+
+    /**
+     * Returns the index of the board with the highest (or lowest) episode
+     * score. Ties go to the lowest index.
+     *
+     * @param best true for the highest score, false for the lowest.
+     * @return the index of the board, or -1 if there are no boards.
+     */
+    public int findBoard(boolean best) {
+        int found = -1;
+        double foundScore = 0.0;
+        for (int i = 0; i < boards.size(); i++) {
+            double score = evaluation.getScore(boards.get(i));
+            if (found < 0 || (best ? score > foundScore : score < foundScore)) {
+                found = i;
+                foundScore = score;
+            }
+        }
+        return found;
+    }
+}
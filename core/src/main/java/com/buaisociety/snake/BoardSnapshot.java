@@ -0,0 +1,165 @@
+package com.buaisociety.snake;
+
+import com.badlogic.gdx.graphics.Color;
+
+import java.util.List;
+
+/**
+ * A copy of the cells of the first few boards of a generation, taken between
+ * two ticks. Snapshots let the render thread draw boards while the
+ * simulation thread keeps updating them (see {@link SnapshotBuffer}).
+ *
+ * <p>A snapshot stores, for every slot, the board's version, the snake's color
+ * and body and the food cell in flat arrays. Once published, a snapshot is not
+ * written again until the reader released it.
+ */
+public class BoardSnapshot {
+
+    private final int area;
+    private final Board[] boards;
+    private final int[] versions;
+    private final int[] colors;
+    private final int[] foods;
+    private final int[] lengths;
+    private final int[] segments;
+    private int boardCount;
+    private long tick;
+
+    /**
+     * Creates an empty snapshot.
+     *
+     * @param width The width of every board.
+     * @param height The height of every board.
+     * @param slots The maximum number of boards in the snapshot.
+     */
+    public BoardSnapshot(int width, int height, int slots) {
+        this.area = width * height;
+        this.boards = new Board[slots];
+        this.versions = new int[slots];
+        this.colors = new int[slots];
+        this.foods = new int[slots];
+        this.lengths = new int[slots];
+        this.segments = new int[slots * area];
+    }
+
+    /**
+     * Copies the first {@link #getSlotCount()} boards, skipping boards whose
+     * version did not change since this snapshot last copied them.
+     *
+     * @param source The boards to copy.
+     * @param tick The number of ticks the simulation ran so far.
+     */
+    void copy(List<Board> source, long tick) {
+        this.tick = tick;
+        this.boardCount = Math.min(source.size(), boards.length);
+        for (int slot = 0; slot < boardCount; slot++) {
+            Board board = source.get(slot);
+            if (board == boards[slot] && board.getVersion() == versions[slot])
+                continue;
+
+            Snake snake = board.getSnake();
+            int length = snake.getLength();
+            int base = slot * area;
+            for (int i = 0; i < length; i++) {
+                segments[base + i] = snake.getSegment(i);
+            }
+
+            boards[slot] = board;
+            versions[slot] = board.getVersion();
+            colors[slot] = Color.rgba8888(snake.getColor());
+            foods[slot] = board.getFoodCell();
+            lengths[slot] = length;
+        }
+    }
+
+    /**
+     * Returns the maximum number of boards in the snapshot.
+     *
+     * @return the number of slots.
+     */
+    public int getSlotCount() {
+        return boards.length;
+    }
+
+    /**
+     * Returns the number of boards in the snapshot.
+     *
+     * @return the number of boards.
+     */
+    public int getBoardCount() {
+        return boardCount;
+    }
+
+    /**
+     * Returns the number of ticks the simulation ran when the snapshot was
+     * taken.
+     *
+     * @return the tick of the snapshot.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Returns the board in the given slot. Only use the board's identity, since
+     * its state keeps changing on the simulation thread.
+     *
+     * @param slot The slot.
+     * @return the board in the slot.
+     */
+    public Board getBoard(int slot) {
+        return boards[slot];
+    }
+
+    /**
+     * Returns the version of the board when it was copied, see
+     * {@link Board#getVersion()}.
+     *
+     * @param slot The slot.
+     * @return the version of the board.
+     */
+    public int getVersion(int slot) {
+        return versions[slot];
+    }
+
+    /**
+     * Returns the color of the snake as RGBA8888.
+     *
+     * @param slot The slot.
+     * @return the color of the snake.
+     */
+    public int getColor(int slot) {
+        return colors[slot];
+    }
+
+    /**
+     * Returns the packed cell of the food, or -1 if there is no food.
+     *
+     * @param slot The slot.
+     * @return the packed cell of the food.
+     */
+    public int getFood(int slot) {
+        return foods[slot];
+    }
+
+    /**
+     * Returns the number of segments of the snake.
+     *
+     * @param slot The slot.
+     * @return the length of the snake.
+     */
+    public int getLength(int slot) {
+        return lengths[slot];
+    }
+
+    /**
+     * Returns the packed cell of one segment of the snake. Index 0 is the head.
+     *
+     * @param slot The slot.
+     * @param index The index of the segment.
+     * @return the packed cell of the segment.
+     */
+    public int getSegment(int slot, int index) {
+        return segments[slot * area + index];
+    }
+}
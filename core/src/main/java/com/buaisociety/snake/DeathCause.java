@@ -0,0 +1,25 @@
+package com.buaisociety.snake;
+
+/**
+ * Why a snake stopped moving.
+ */
+public enum DeathCause {
+
+    /**
+     * The snake is still alive, or it filled the whole board
+     * (see {@link Board#isWon()}).
+     */
+    NONE,
+
+    /**
+     * The snake ran into its own body, or in an
+     * {@link com.buaisociety.snake.arena.Arena}, into another snake or a
+     * head-on collision it did not win.
+     */
+    COLLISION,
+
+    /**
+     * The snake went longer than its {@link StarvationBudget} without eating.
+     */
+    STARVATION
+}
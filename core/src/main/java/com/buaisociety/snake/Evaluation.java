@@ -0,0 +1,219 @@
+package com.buaisociety.snake;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * How clients are scored. Each client plays {@link #getEpisodes()} games, each
+ * with its own seed, and its score is the aggregate of the episode scores.
+ * Scoring a client over several episodes makes its score depend less on the
+ * luck of a single food sequence.
+ *
+ * <p>With common random numbers, episode {@code e} has the same seed for
+ * every client, so every client is tested on the exact same set of boards and
+ * score differences come from the networks alone:
+ * <pre>{@code
+ *     // 8 episodes per client, shared seeds, scored by the worst episode
+ *     Evaluation evaluation = new Evaluation(8, true, Evaluation.Aggregate.MIN, 0.0);
+ *     trainer.setEvaluation(evaluation);
+ * }</pre>
+ *
+ * <p>An episode's score is the number of food the snake ate.
+ */
+public final class Evaluation {
+
+    /**
+     * How the episode scores of a client are combined into its score.
+     */
+    public enum Aggregate {
+
+        /**
+         * The average episode score.
+         */
+        MEAN,
+
+        /**
+         * The worst episode score, which rewards networks that never fail.
+         */
+        MIN,
+
+        /**
+         * The episode score at {@link #getQuantile()}, e.g. 0.5 for the
+         * median. Quantiles are interpolated between episodes.
+         */
+        QUANTILE
+    }
+
+    /**
+     * One episode per client, which is how the trainer has always scored.
+     */
+    public static final Evaluation SINGLE = new Evaluation(1, false, Aggregate.MEAN, 0.5);
+
+    /**
+     * The number of bytes {@link #write(ByteBuffer)} writes.
+     */
+    public static final int ENCODED_BYTES = 4 + 1 + 1 + 8;
+
+    private final int episodes;
+    private final boolean commonRandomNumbers;
+    private final Aggregate aggregate;
+    private final double quantile;
+
+    /**
+     * Creates an evaluation mode.
+     *
+     * @param episodes The number of games every client plays.
+     * @param commonRandomNumbers Whether every client plays the same seeds.
+     * @param aggregate How episode scores are combined.
+     * @param quantile The quantile in {@code [0, 1]}, only used by
+     *                 {@link Aggregate#QUANTILE}.
+     */
+    public Evaluation(int episodes, boolean commonRandomNumbers, Aggregate aggregate, double quantile) {
+        if (episodes < 1)
+            throw new IllegalArgumentException("Need at least 1 episode, got " + episodes);
+        if (quantile < 0.0 || quantile > 1.0)
+            throw new IllegalArgumentException("Quantile must be in [0, 1], got " + quantile);
+
+        this.episodes = episodes;
+        this.commonRandomNumbers = commonRandomNumbers;
+        this.aggregate = aggregate;
+        this.quantile = quantile;
+    }
+
+    /**
+     * Returns the number of games every client plays.
+     *
+     * @return the number of episodes per client.
+     */
+    public int getEpisodes() {
+        return episodes;
+    }
+
+    /**
+     * Returns whether every client plays the same seeds.
+     *
+     * @return whether common random numbers are used.
+     */
+    public boolean isCommonRandomNumbers() {
+        return commonRandomNumbers;
+    }
+
+    /**
+     * Returns how episode scores are combined.
+     *
+     * @return the aggregate function.
+     */
+    public Aggregate getAggregate() {
+        return aggregate;
+    }
+
+    /**
+     * Returns the quantile used by {@link Aggregate#QUANTILE}.
+     *
+     * @return the quantile in {@code [0, 1]}.
+     */
+    public double getQuantile() {
+        return quantile;
+    }
+
+    /**
+     * Returns the seed of one episode of one client. Without common random
+     * numbers, every board gets its own stream; with a single episode this
+     * is the same seed the trainer used before episodes existed.
+     *
+     * @param generationSeed The seed of the generation.
+     * @param client The index of the client.
+     * @param episode The index of the episode.
+     * @return the seed of the episode's board.
+     */
+    public long getSeed(long generationSeed, int client, int episode) {
+        long index = commonRandomNumbers ? episode : (long) client * episodes + episode;
+        return Seeds.split(generationSeed, index);
+    }
+
+    /**
+     * Returns the score of a finished episode.
+     *
+     * @param board The board the episode was played on.
+     * @return the score of the episode.
+     */
+    public double getScore(Board board) {
+        return board.getSnake().getMaxLength() - Board.STARTING_LENGTH;
+    }
+
+    /**
+     * Combines the episode scores of one client. For {@link Aggregate#QUANTILE},
+     * the array is sorted in place.
+     *
+     * @param scores The episode scores, {@link #getEpisodes()} long.
+     * @return the score of the client.
+     */
+    public double aggregate(double[] scores) {
+        return switch (aggregate) {
+            case MEAN -> {
+                double sum = 0.0;
+                for (double score : scores) {
+                    sum += score;
+                }
+                yield sum / scores.length;
+            }
+            case MIN -> {
+                double min = Double.POSITIVE_INFINITY;
+                for (double score : scores) {
+                    min = Math.min(min, score);
+                }
+                yield min;
+            }
+            case QUANTILE -> {
+                Arrays.sort(scores);
+                double position = quantile * (scores.length - 1);
+                int lower = (int) position;
+                int upper = Math.min(lower + 1, scores.length - 1);
+                yield scores[lower] + (position - lower) * (scores[upper] - scores[lower]);
+            }
+        };
+    }
+
+    /**
+     * Writes the evaluation mode, all big-endian: {@code int episodes},
+     * {@code byte commonRandomNumbers}, {@code byte aggregate},
+     * {@code double quantile}.
+     *
+     * @param buffer The buffer to write to.
+     */
+    public void write(ByteBuffer buffer) {
+        buffer.putInt(episodes)
+            .put((byte) (commonRandomNumbers ? 1 : 0))
+            .put((byte) aggregate.ordinal())
+            .putDouble(quantile);
+    }
+
+    /**
+     * Reads an evaluation mode written by {@link #write(ByteBuffer)}.
+     *
+     * @param buffer The buffer to read from.
+     * @return the evaluation mode.
+     * @throws IllegalArgumentException if the buffer does not hold an
+     *                                  evaluation mode.
+     * @throws java.nio.BufferUnderflowException if the buffer is too short.
+     */
+    public static Evaluation read(ByteBuffer buffer) {
+        int episodes = buffer.getInt();
+        boolean commonRandomNumbers = buffer.get() != 0;
+        int aggregate = buffer.get();
+        double quantile = buffer.getDouble();
+        if (aggregate < 0 || aggregate >= Aggregate.values().length)
+            throw new IllegalArgumentException("Unknown aggregate " + aggregate);
+        return new Evaluation(episodes, commonRandomNumbers, Aggregate.values()[aggregate], quantile);
+    }
+
+    @Override
+    public String toString() {
+        return "Evaluation{" +
+            "episodes=" + episodes +
+            ", commonRandomNumbers=" + commonRandomNumbers +
+            ", aggregate=" + aggregate +
+            (aggregate == Aggregate.QUANTILE ? ", quantile=" + quantile : "") +
+            '}';
+    }
+}
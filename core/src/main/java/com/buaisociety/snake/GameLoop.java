@@ -2,12 +2,44 @@ package com.buaisociety.snake;
 
 /**
  * Handles a typical game loop (e.g. a game that updates at a fixed rate). Users
- * of this class should call {@link #update()} as often as possible, and when it
- * returns true, update the game state.
+ * of this class should call {@link #pollTicks()} as often as possible, and run
+ * as many ticks as it returns.
+ *
+ * <p>The tick rate is the base rate times a speed multiplier, which may be
+ * changed from any thread while the loop is running (e.g. from an input
+ * handler). At {@link #UNCAPPED} speed, there is no fixed rate: the caller
+ * runs as many ticks as fit in {@link #getFrameBudgetNanos()} instead.
+ * <pre>{@code
+ *     int due = gameLoop.pollTicks();
+ *     long deadline = System.nanoTime() + gameLoop.getFrameBudgetNanos();
+ *     for (int i = 0; i < due && System.nanoTime() < deadline; i++) {
+ *         tick();
+ *     }
+ * }</pre>
  */
 public class GameLoop {
 
-    private final double nanosecondsBetweenTicks;
+    /**
+     * The speed multiplier that runs ticks as fast as possible.
+     */
+    public static final double UNCAPPED = Double.POSITIVE_INFINITY;
+
+    /**
+     * The default maximum number of ticks {@link #pollTicks()} returns after
+     * falling behind.
+     */
+    public static final int DEFAULT_MAX_CATCH_UP = 10;
+
+    /**
+     * The default time a caller may spend running ticks before it should
+     * hand its results to the renderer, about one frame at 60 fps.
+     */
+    public static final long DEFAULT_FRAME_BUDGET_NANOS = 16_000_000L;
+
+    private final double baseTicksPerSecond;
+    private volatile double speed;
+    private volatile int maxCatchUp;
+    private volatile long frameBudgetNanos;
     private double delta;
     private long lastTime;
 
@@ -17,8 +49,111 @@ public class GameLoop {
      * @param perSecond The desired number of updates/ticks per second
      */
     public GameLoop(double perSecond) {
-        this.nanosecondsBetweenTicks = 1000000000.0 / perSecond;
+        this.baseTicksPerSecond = perSecond;
+        this.maxCatchUp = DEFAULT_MAX_CATCH_UP;
+        this.frameBudgetNanos = DEFAULT_FRAME_BUDGET_NANOS;
         this.lastTime = System.nanoTime();
+        setSpeed(1.0);
+    }
+
+    /**
+     * Returns the tick rate at 1x speed.
+     *
+     * @return the number of ticks per second at 1x speed.
+     */
+    public double getBaseTicksPerSecond() {
+        return baseTicksPerSecond;
+    }
+
+    /**
+     * Returns the current speed multiplier.
+     *
+     * @return the speed multiplier, or {@link #UNCAPPED}.
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Sets the speed multiplier. The tick rate becomes the base rate times the
+     * multiplier, so 10 runs ten times as many ticks per second.
+     *
+     * @param speed the new speed multiplier, or {@link #UNCAPPED}.
+     */
+    public void setSpeed(double speed) {
+        if (!(speed > 0.0))
+            throw new IllegalArgumentException("Speed must be positive, got " + speed);
+
+        this.speed = speed;
+    }
+
+    /**
+     * Returns the time between ticks at the given speed. Callers read
+     * {@link #speed} once and pass it in, so the interval always matches the
+     * speed it is used with, even while another thread changes the speed.
+     */
+    private double nanosecondsBetweenTicks(double speed) {
+        return 1000000000.0 / (baseTicksPerSecond * speed);
+    }
+
+    /**
+     * Returns whether ticks run as fast as possible.
+     *
+     * @return whether the speed is {@link #UNCAPPED}.
+     */
+    public boolean isUncapped() {
+        return speed == UNCAPPED;
+    }
+
+    /**
+     * Returns the current number of ticks per second.
+     *
+     * @return the number of ticks per second, or infinity when uncapped.
+     */
+    public double getTicksPerSecond() {
+        return baseTicksPerSecond * speed;
+    }
+
+    /**
+     * Returns the maximum number of ticks {@link #pollTicks()} returns at
+     * once. Ticks that are due beyond this are dropped, so a loop that fell
+     * behind (e.g. during a slow evolution) does not try to catch up forever.
+     *
+     * @return the maximum number of catch-up ticks.
+     */
+    public int getMaxCatchUp() {
+        return maxCatchUp;
+    }
+
+    /**
+     * Sets the maximum number of ticks {@link #pollTicks()} returns at once.
+     *
+     * @param maxCatchUp the maximum number of catch-up ticks, at least 1.
+     */
+    public void setMaxCatchUp(int maxCatchUp) {
+        if (maxCatchUp < 1)
+            throw new IllegalArgumentException("Need to catch up at least 1 tick, got " + maxCatchUp);
+
+        this.maxCatchUp = maxCatchUp;
+    }
+
+    /**
+     * Returns the time a caller may spend running the ticks returned by
+     * {@link #pollTicks()} before it should stop and publish its results.
+     *
+     * @return the frame budget in nanoseconds.
+     */
+    public long getFrameBudgetNanos() {
+        return frameBudgetNanos;
+    }
+
+    /**
+     * Sets the time a caller may spend running ticks before publishing.
+     *
+     * @param frameBudgetNanos the frame budget in nanoseconds.
+     */
+    public void setFrameBudgetNanos(long frameBudgetNanos) {
+        this.frameBudgetNanos = frameBudgetNanos;
     }
 
     /**
@@ -27,19 +162,60 @@ public class GameLoop {
      * @return The time in nanoseconds before the next tick should occur.
      */
     public long nanoBeforeNextTick() {
-        long then = lastTime + (long) nanosecondsBetweenTicks;
+        double speed = this.speed;
+        if (speed == UNCAPPED)
+            return 0;
+
+        long then = lastTime + (long) ((1.0 - delta) * nanosecondsBetweenTicks(speed));
         return then - System.nanoTime();
     }
 
+    /**
+     * Returns how many ticks are due since the last call, at most
+     * {@link #getMaxCatchUp()}. At {@link #UNCAPPED} speed, this returns
+     * {@link Integer#MAX_VALUE}, and the caller should stop once its
+     * {@link #getFrameBudgetNanos()} ran out.
+     *
+     * @return the number of ticks to run now.
+     */
+    public int pollTicks() {
+        long now = System.nanoTime();
+        double speed = this.speed;
+        if (speed == UNCAPPED) {
+            delta = 0.0;
+            lastTime = now;
+            return Integer.MAX_VALUE;
+        }
+
+        advance(now, speed);
+
+        int due = (int) delta;
+        if (due > maxCatchUp) {
+            // We fell too far behind, drop the ticks we cannot catch up on
+            delta -= due;
+            return maxCatchUp;
+        }
+
+        delta -= due;
+        return due;
+    }
+
     /**
      * Updates the game loop. This method should be called as often as possible.
+     * Returns true at most once per call; prefer {@link #pollTicks()}, which
+     * also reports when several ticks are due.
      *
      * @return true if the game should update, false otherwise.
      */
     public boolean update() {
         long now = System.nanoTime();
-        delta += (now - lastTime) / nanosecondsBetweenTicks;
-        lastTime = now;
+        double speed = this.speed;
+        if (speed == UNCAPPED) {
+            lastTime = now;
+            return true;
+        }
+
+        advance(now, speed);
 
         if (delta >= 1.0) {
             delta--;
@@ -48,4 +224,16 @@ public class GameLoop {
             return false;
         }
     }
+
+    /**
+     * Adds the ticks that became due since the last call to {@link #delta}.
+     * A delta that is not finite would either return the catch-up limit
+     * forever (infinity) or never tick again (NaN), so it starts over instead.
+     */
+    private void advance(long now, double speed) {
+        delta += (now - lastTime) / nanosecondsBetweenTicks(speed);
+        lastTime = now;
+        if (!Double.isFinite(delta))
+            delta = 0.0;
+    }
 }
@@ -0,0 +1,320 @@
+package com.buaisociety.snake;
+
+import com.buaisociety.snake.arena.ArenaEvaluator;
+import com.buaisociety.snake.distributed.Coordinator;
+import com.buaisociety.snake.distributed.Protocol;
+import com.buaisociety.snake.network.NetworkCompiler;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.Set;
+
+/**
+ * Trains the population without a window. Boards are ticked as fast as the
+ * CPU allows (there is no {@link GameLoop} pacing and no {@code SpriteBatch},
+ * {@code Gdx} or GL context), so this is the entry point to use on headless
+ * machines.
+ *
+ * <p>Supported arguments:
+ * <ul>
+ *     <li>{@code --games <n>}: the population size (default 1000).</li>
+ *     <li>{@code --generations <n>}: stop after this many generations
+ *         (default 0, which runs forever).</li>
+ *     <li>{@code --max-ticks <n>}: end a generation after this many ticks,
+ *         even if some snakes are still alive (default 10000, 0 disables).
+ *         With {@code --steady-state}, a client is replaced after this many
+ *         ticks instead.</li>
+ *     <li>{@code --threads <n>}: the number of threads used to update boards
+ *         (default is the number of available processors, 1 is serial).</li>
+ *     <li>{@code --speedup-ticks <n>}: before training, time this many ticks
+ *         of the first generation on 1 thread and on {@code --threads}
+ *         threads, and print the measured speedup (default 200, 0 skips
+ *         it). The generation is restarted afterwards.</li>
+ *     <li>{@code --seed <n>}: the master seed of the run (default is random).
+ *         Runs with the same seed evaluate every board identically.</li>
+ *     <li>{@code --starvation <steps>}: the number of steps a snake may take
+ *         without eating, or 0 to never starve (default is the board area,
+ *         see {@link StarvationBudget#DEFAULT}).</li>
+ *     <li>{@code --starvation-per-segment <steps>}: extra steps without
+ *         eating for every segment of the snake's max length (default 0).</li>
+ *     <li>{@code --episodes <n>}: the number of games every client plays
+ *         per generation (default 1).</li>
+ *     <li>{@code --common-seeds}: every client plays the same episode seeds.</li>
+ *     <li>{@code --checkpoint-every <n>}: save the population every this many
+ *         generations, or 0 to never save it (default 1). The best genome is
+ *         saved whenever it improves.</li>
+ *     <li>{@code --record-replays}: append the best and worst game of every
+ *         generation to {@code replays.bin} in the save folder.</li>
+ *     <li>{@code --metrics-every <seconds>}: print a summary of the tick
+ *         rate, generation rate, allocation rate and 99th percentile tick
+ *         latency this often, and append it to {@code metrics.csv} in the
+ *         save folder (default 0, which disables the summary).</li>
+ *     <li>{@code --jfr <file>}: record a Java Flight Recording, including
+ *         the training phase, tick and checkpoint events (see
+ *         {@link com.buaisociety.snake.metrics}), to the given file.</li>
+ *     <li>{@code --coordinator <address>}: evaluate generations on remote
+ *         workers (see {@link com.buaisociety.snake.distributed.Worker})
+ *         that connect to this address, {@code host:port} or
+ *         {@code unix:<path>}, instead of on this machine.</li>
+ *     <li>{@code --batch-size <n>}: the number of clients sent to a worker
+ *         per message (default {@value Coordinator#DEFAULT_BATCH_SIZE}).</li>
+ *     <li>{@code --worker-timeout <seconds>}: how long a worker may take for a
+ *         batch before its batches are handed to other workers (default 120).</li>
+ *     <li>{@code --steady-state}: replace every client as soon as its games
+ *         are over with a mutated offspring, instead of evolving whole
+ *         generations (see {@link SteadyState}). A generation is reported
+ *         every time as many offspring were born as there are clients.</li>
+ *     <li>{@code --archive-size <n>}: the number of best genomes steady-state
+ *         parents are picked from (default {@value SteadyState#DEFAULT_ARCHIVE_SIZE}).</li>
+ *     <li>{@code --tournament-size <n>}: the number of archived genomes that
+ *         compete to be a steady-state parent (default
+ *         {@value SteadyState#DEFAULT_TOURNAMENT_SIZE}).</li>
+ *     <li>{@code --arena <n>}: score clients by letting groups of this many
+ *         play against each other on one shared board (see
+ *         {@link com.buaisociety.snake.arena.Arena}), instead of every client
+ *         playing alone.</li>
+ *     <li>{@code --arena-size <n>}: the width and height of every arena
+ *         (default is about 64 cells per snake).</li>
+ *     <li>{@code --arena-food <n>}: the number of food items on every arena
+ *         (default is 1 for every 4 snakes).</li>
+ *     <li>{@code --uncompressed}: do not compress population checkpoints.</li>
+ *     <li>{@code --resume <folder>}: continue the run saved in the given
+ *         folder from its latest checkpoint, instead of starting a new run.
+ *         The seed, population, generation, evaluation and starvation budget
+ *         come from the checkpoint, so {@code --seed}, {@code --episodes},
+ *         {@code --common-seeds}, {@code --aggregate}, {@code --starvation}
+ *         and {@code --starvation-per-segment} cannot be combined with it.
+ *         With {@code --steady-state}, the archive of parents is not saved,
+ *         so it starts over empty.</li>
+ *     <li>{@code --aggregate <mean|min|q>}: how episode scores are combined
+ *         into a client's score, where {@code q} in {@code [0, 1]} is a
+ *         quantile, e.g. {@code 0.5} for the median (default mean).</li>
+ * </ul>
+ * At most one of {@code --coordinator}, {@code --arena} and
+ * {@code --steady-state} may be given, since each replaces how a generation
+ * is evaluated.
+ */
+public final class HeadlessTrainer {
+
+    private static final Set<String> RESTORED_ARGUMENTS = Set.of(
+        "--seed", "--starvation", "--starvation-per-segment", "--episodes", "--common-seeds", "--aggregate");
+
+    private HeadlessTrainer() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int totalGames = 1000;
+        int generations = 0;
+        int maxTicks = 10000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int speedupTicks = 200;
+        long seed = Seeds.random();
+        int starvation = Trainer.BOARD_WIDTH * Trainer.BOARD_HEIGHT;
+        float starvationPerSegment = 0f;
+        int episodes = 1;
+        boolean commonSeeds = false;
+        String aggregate = "mean";
+        int checkpointEvery = 1;
+        boolean compress = true;
+        boolean recordReplays = false;
+        double metricsEvery = 0.0;
+        Path jfr = null;
+        String coordinatorAddress = null;
+        boolean steadyState = false;
+        int archiveSize = SteadyState.DEFAULT_ARCHIVE_SIZE;
+        int tournamentSize = SteadyState.DEFAULT_TOURNAMENT_SIZE;
+        int arenaSnakes = 0;
+        int arenaSize = 0;
+        int arenaFood = 0;
+        int batchSize = Coordinator.DEFAULT_BATCH_SIZE;
+        double workerTimeout = Coordinator.DEFAULT_TIMEOUT_MILLIS / 1000.0;
+        File resume = null;
+        String restoredArgument = null;
+
+        for (int i = 0; i < args.length; i++) {
+            // These are restored from the checkpoint when resuming
+            if (RESTORED_ARGUMENTS.contains(args[i]))
+                restoredArgument = args[i];
+
+            switch (args[i]) {
+                case "--games" -> totalGames = Integer.parseInt(args[++i]);
+                case "--generations" -> generations = Integer.parseInt(args[++i]);
+                case "--max-ticks" -> maxTicks = Integer.parseInt(args[++i]);
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--speedup-ticks" -> speedupTicks = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--starvation" -> starvation = Integer.parseInt(args[++i]);
+                case "--starvation-per-segment" -> starvationPerSegment = Float.parseFloat(args[++i]);
+                case "--episodes" -> episodes = Integer.parseInt(args[++i]);
+                case "--common-seeds" -> commonSeeds = true;
+                case "--aggregate" -> aggregate = args[++i];
+                case "--checkpoint-every" -> checkpointEvery = Integer.parseInt(args[++i]);
+                case "--uncompressed" -> compress = false;
+                case "--record-replays" -> recordReplays = true;
+                case "--metrics-every" -> metricsEvery = Double.parseDouble(args[++i]);
+                case "--jfr" -> jfr = Path.of(args[++i]);
+                case "--coordinator" -> coordinatorAddress = args[++i];
+                case "--steady-state" -> steadyState = true;
+                case "--archive-size" -> archiveSize = Integer.parseInt(args[++i]);
+                case "--tournament-size" -> tournamentSize = Integer.parseInt(args[++i]);
+                case "--arena" -> arenaSnakes = Integer.parseInt(args[++i]);
+                case "--arena-size" -> arenaSize = Integer.parseInt(args[++i]);
+                case "--arena-food" -> arenaFood = Integer.parseInt(args[++i]);
+                case "--batch-size" -> batchSize = Integer.parseInt(args[++i]);
+                case "--worker-timeout" -> workerTimeout = Double.parseDouble(args[++i]);
+                case "--resume" -> resume = new File(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+
+        int modes = (coordinatorAddress != null ? 1 : 0) + (arenaSnakes > 0 ? 1 : 0) + (steadyState ? 1 : 0);
+        if (modes > 1)
+            throw new IllegalArgumentException("--coordinator, --arena and --steady-state cannot be combined");
+        if (resume != null && restoredArgument != null)
+            throw new IllegalArgumentException(restoredArgument + " cannot be used with --resume, it is restored from the checkpoint");
+
+        Recording recording = null;
+        if (jfr != null) {
+            try {
+                recording = new Recording(Configuration.getConfiguration("default"));
+            } catch (ParseException e) {
+                throw new IOException("Failed to parse the default JFR configuration", e);
+            }
+            recording.setDestination(jfr);
+            recording.start();
+        }
+
+        Trainer trainer;
+        if (resume != null) {
+            long resumeStart = System.nanoTime();
+            trainer = Trainer.resume(resume, threads);
+            seed = trainer.getSeed();
+            System.out.printf("Resumed generation %d from %s in %.3fs%n",
+                trainer.getGeneration(), resume, (System.nanoTime() - resumeStart) / 1e9);
+        } else {
+            trainer = new Trainer(totalGames, threads, seed, Main.getSaveFolder());
+        }
+        trainer.setCompressCheckpoints(compress);
+        trainer.setRecordReplays(recordReplays);
+        trainer.setMetricsInterval(metricsEvery);
+        if (resume == null) {
+            trainer.setStarvationBudget(starvation <= 0 && starvationPerSegment <= 0f
+                ? StarvationBudget.UNLIMITED
+                : new StarvationBudget(Math.max(starvation, 0), starvationPerSegment, 0f));
+            trainer.setEvaluation(switch (aggregate) {
+                case "mean" -> new Evaluation(episodes, commonSeeds, Evaluation.Aggregate.MEAN, 0.5);
+                case "min" -> new Evaluation(episodes, commonSeeds, Evaluation.Aggregate.MIN, 0.0);
+                default -> new Evaluation(episodes, commonSeeds, Evaluation.Aggregate.QUANTILE, Double.parseDouble(aggregate));
+            });
+        }
+        trainer.getCheckpoints().setEvery(checkpointEvery);
+        trainer.restartGeneration();
+        if (threads > 1 && speedupTicks > 0 && coordinatorAddress == null && arenaSnakes <= 0) {
+            System.out.printf("Speedup: %.2fx on %d threads over %d ticks of %d boards%n",
+                trainer.measureSpeedup(speedupTicks), threads, speedupTicks, trainer.getGames().size());
+        }
+        if (steadyState) {
+            trainer.enableSteadyState(archiveSize, tournamentSize);
+            trainer.getSteadyState().setMaxTicks(maxTicks);
+        }
+
+        Coordinator coordinator = null;
+        if (coordinatorAddress != null) {
+            coordinator = new Coordinator(Protocol.parseAddress(coordinatorAddress));
+            coordinator.setBatchSize(batchSize);
+            coordinator.setTimeoutMillis((long) (workerTimeout * 1000));
+            coordinator.setMaxTicks(maxTicks);
+            System.out.println("Coordinating workers on " + coordinatorAddress);
+        }
+        ArenaEvaluator arenas = null;
+        if (arenaSnakes > 0) {
+            if (arenaSize <= 0)
+                arenaSize = Math.max(Trainer.BOARD_WIDTH, (int) Math.ceil(Math.sqrt(arenaSnakes * 64.0)));
+            if (arenaFood <= 0)
+                arenaFood = Math.max(1, arenaSnakes / 4);
+
+            arenas = trainer.createArenaEvaluator(arenaSize, arenaSize, arenaSnakes, arenaFood);
+            arenas.setMaxTicks(maxTicks);
+            System.out.printf("Arenas: %d snakes on %dx%d with %d food, %d regions%n",
+                arenaSnakes, arenaSize, arenaSize, arenaFood, arenas.getArena().getRegionCount());
+        }
+        System.out.println(trainer.getEvaluation());
+        System.out.println("Seed: " + seed);
+        long start = System.nanoTime();
+
+        for (int generation = 1; generations <= 0 || generation <= generations; generation++) {
+            long generationStart = System.nanoTime();
+
+            if (coordinator != null) {
+                trainer.evaluate(coordinator);
+                trainer.evolve();
+
+                double generationSeconds = (System.nanoTime() - generationStart) / 1e9;
+                System.out.printf("Generation %d: evaluated in %.3fs on %d workers (%d batches, %d stolen, %d re-dispatched, %d clients evaluated locally), %.3f generations/s%n",
+                    generation, generationSeconds, coordinator.getWorkerCount(), coordinator.getBatches(),
+                    coordinator.getStolen(), coordinator.getRedispatched(), coordinator.getLocalClients(),
+                    generation / ((System.nanoTime() - start) / 1e9));
+                continue;
+            }
+
+            if (arenas != null) {
+                trainer.evaluate(arenas);
+                trainer.evolve();
+
+                double generationSeconds = (System.nanoTime() - generationStart) / 1e9;
+                System.out.printf("Generation %d: %d arena ticks in %.3fs (%.0f ticks/s on %d threads), %.3f generations/s%n",
+                    generation, arenas.getTicks(), generationSeconds, arenas.getTicks() / generationSeconds,
+                    threads, generation / ((System.nanoTime() - start) / 1e9));
+                continue;
+            }
+
+            if (trainer.getSteadyState() != null) {
+                SteadyState evolver = trainer.getSteadyState();
+                int startGeneration = trainer.getGeneration();
+                int ticks = 0;
+                int born = 0;
+                while (trainer.getGeneration() == startGeneration) {
+                    born += trainer.tickSteadyState();
+                    ticks++;
+                }
+
+                double generationSeconds = (System.nanoTime() - generationStart) / 1e9;
+                System.out.printf("Generation %d: %d ticks in %.3fs (%.0f ticks/s), %d offspring, best %.1f, archive mean %.2f, %.3f generations/s%n",
+                    generation, ticks, generationSeconds, ticks / generationSeconds, born, evolver.getBestScore(),
+                    evolver.getArchiveMeanScore(), generation / ((System.nanoTime() - start) / 1e9));
+                continue;
+            }
+
+            int ticks = 0;
+            while (trainer.tick()) {
+                ticks++;
+                if (maxTicks > 0 && ticks >= maxTicks)
+                    break;
+            }
+            trainer.evolve();
+
+            long now = System.nanoTime();
+            double generationSeconds = (now - generationStart) / 1e9;
+            double generationsPerSecond = generation / ((now - start) / 1e9);
+            System.out.printf("Generation %d: %d ticks in %.3fs (%.0f ticks/s on %d threads), %.3f generations/s%n",
+                generation, ticks, generationSeconds, ticks / generationSeconds, threads, generationsPerSecond);
+            NetworkCompiler compiler = trainer.getCompiler();
+            System.out.printf("Networks: %d compiled, %d reused, %d evaluated directly%n",
+                compiler.getCompiled(), compiler.getReused(), compiler.getRejected());
+        }
+
+        // Waits for the last checkpoints to be written
+        if (coordinator != null)
+            coordinator.close();
+        trainer.close();
+        if (recording != null) {
+            recording.stop();
+            recording.close();
+            System.out.println("Flight recording written to " + jfr);
+        }
+    }
+}
@@ -5,15 +5,36 @@ import com.badlogic.gdx.InputProcessor;
 import org.jetbrains.annotations.Nullable;
 
 /**
- * Treats keyboard input as a joystick input.
+ * Treats keyboard input as a joystick input. When a {@link GameLoop} is set,
+ * the number keys also control the simulation speed: {@code 1} is 1x,
+ * {@code 2} is 10x, {@code 3} is 100x and {@code 4} runs uncapped.
  */
 public class Joystick implements InputProcessor {
 
     private Direction direction;
+    private GameLoop gameLoop;
 
     public Joystick() {
     }
 
+    /**
+     * Returns the game loop whose speed the number keys control.
+     *
+     * @return the game loop, or null.
+     */
+    public @Nullable GameLoop getGameLoop() {
+        return gameLoop;
+    }
+
+    /**
+     * Sets the game loop whose speed the number keys control.
+     *
+     * @param gameLoop the game loop, or null to ignore the number keys.
+     */
+    public void setGameLoop(@Nullable GameLoop gameLoop) {
+        this.gameLoop = gameLoop;
+    }
+
     public @Nullable Direction getDirection() {
         return direction;
     }
@@ -26,6 +47,20 @@ public class Joystick implements InputProcessor {
 
     @Override
     public boolean keyDown(int keycode) {
+        if (gameLoop != null) {
+            double speed = switch (keycode) {
+                case Input.Keys.NUM_1 -> 1.0;
+                case Input.Keys.NUM_2 -> 10.0;
+                case Input.Keys.NUM_3 -> 100.0;
+                case Input.Keys.NUM_4 -> GameLoop.UNCAPPED;
+                default -> 0.0;
+            };
+            if (speed != 0.0) {
+                gameLoop.setSpeed(speed);
+                return true;
+            }
+        }
+
         Direction direction = null;
         switch (keycode) {
             case Input.Keys.UP, Input.Keys.W -> direction = Direction.UP;
@@ -4,24 +4,17 @@ import com.badlogic.gdx.ApplicationAdapter;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.profiling.GLProfiler;
 import com.badlogic.gdx.utils.ScreenUtils;
-import com.buaisociety.snake.behaviors.Behavior;
-import com.buaisociety.snake.behaviors.JoystickBehavior;
-import com.buaisociety.snake.behaviors.NeatBehavior;
-import com.cjcrafter.neat.Neat;
-import com.cjcrafter.neat.NeatImpl;
-import com.cjcrafter.neat.NeatPrinter;
-import com.cjcrafter.neat.NeatSaver;
-import com.cjcrafter.neat.Parameters;
 import org.jetbrains.annotations.NotNull;
 import org.joml.Vector2i;
 
 import java.io.File;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * {@link com.badlogic.gdx.ApplicationListener} implementation shared by all platforms.
@@ -29,22 +22,39 @@ import java.util.List;
 public class Main extends ApplicationAdapter {
     private SpriteBatch batch;
     private OrthographicCamera camera;
-    private GameLoop gameLoop;
-    private Neat neat;
-    private NeatPrinter printer;
-    private NeatSaver saver;
+    private Trainer trainer;
+    private SnapshotBuffer snapshots;
+    private SimulationThread simulation;
+    private BoardAtlas atlas;
+    private Texture checkerboard;
+    private GLProfiler profiler;
+    private int drawCalls;
+    private int flushes;
+    private long lastReport;
 
-    private List<Board> games;
     private Vector2i visibleGames = new Vector2i(20, 15);
     private int totalGames = 1000;
+    private final boolean steadyState;
 
-    public void createNeat() {
-        // TODO: create a neat instance here
-        Parameters parameters = new Parameters();
-        neat = new NeatImpl(4, 4, totalGames, parameters);
+    /**
+     * Creates the application with generational evolution.
+     */
+    public Main() {
+        this(false);
     }
 
-    public @NotNull File getSaveFolder() {
+    /**
+     * Creates the application.
+     *
+     * @param steadyState Whether to replace every client as soon as its games
+     *                    are over instead of evolving whole generations, see
+     *                    {@link SteadyState}.
+     */
+    public Main(boolean steadyState) {
+        this.steadyState = steadyState;
+    }
+
+    public static @NotNull File getSaveFolder() {
         // Create the "saves" directory if it doesn't exist
         File saveFolder = new File("saves");
         saveFolder.mkdirs();
@@ -86,92 +96,132 @@ public class Main extends ApplicationAdapter {
         return newFolder;
     }
 
+    /**
+     * Returns the number of OpenGL draw calls of the last frame.
+     *
+     * @return the number of draw calls of the last frame.
+     */
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    /**
+     * Returns how many times the sprite batch flushed during the last frame.
+     *
+     * @return the number of batch flushes of the last frame.
+     */
+    public int getFlushes() {
+        return flushes;
+    }
+
     @Override
     public void create() {
         Joystick joystick = new Joystick();
         Gdx.input.setInputProcessor(joystick);
 
-        // Instantiate the neat stuff
-        createNeat();
-        printer = new NeatPrinter(neat);
-        saver = new NeatSaver(neat, getSaveFolder());
-
-        // Instantiate all the games
-        games = new ArrayList<>();
-        for (int i = 0; i < totalGames; i++) {
-            Behavior behavior = new NeatBehavior(neat.getClients().get(i));
-            Board board = new Board(24, 24, behavior);
-            games.add(board);
-        }
+        // Instantiate the neat stuff and all the games
+        trainer = new Trainer(totalGames, Runtime.getRuntime().availableProcessors(), Seeds.random(), getSaveFolder());
+        if (steadyState)
+            trainer.enableSteadyState(SteadyState.DEFAULT_ARCHIVE_SIZE, SteadyState.DEFAULT_TOURNAMENT_SIZE);
         batch = new SpriteBatch();
+        atlas = new BoardAtlas(Trainer.BOARD_WIDTH, Trainer.BOARD_HEIGHT, visibleGames.x, visibleGames.y);
 
-        // Initialize the camera with a viewport of 24x24 units
+        // Initialize the camera with a viewport of 24x24 units per game. The
+        // camera never moves, so every board is drawn with this one projection.
         camera = new OrthographicCamera();
-        camera.setToOrtho(false, 24 * visibleGames.x(), 24 * visibleGames.y());
-
-        gameLoop = new GameLoop(5.0f);
+        camera.setToOrtho(false, Trainer.BOARD_WIDTH * visibleGames.x(), Trainer.BOARD_HEIGHT * visibleGames.y());
+        batch.setProjectionMatrix(camera.combined);
+        checkerboard = createCheckerboard(visibleGames.x(), visibleGames.y());
+
+        profiler = new GLProfiler(Gdx.graphics);
+        profiler.enable();
+
+        // The games are updated on their own thread, we only draw snapshots
+        snapshots = new SnapshotBuffer(Trainer.BOARD_WIDTH, Trainer.BOARD_HEIGHT, atlas.getSlotCount());
+        GameLoop gameLoop = new GameLoop(5.0f);
+        joystick.setGameLoop(gameLoop);
+        simulation = new SimulationThread(trainer, gameLoop, snapshots);
+        simulation.start();
     }
 
     @Override
     public void render() {
-        // Only update the game state when enough time has passed
-        boolean anyAlive = true;
-        if (gameLoop.update()) {
-            anyAlive = false;
-            for (Board board : games) {
-                if (board.getSnake().isDead())
-                    continue;
-
-                anyAlive = true;
-                board.update();
-            }
-        }
-
-        // If all games are dead, evolve the population
-        if (!anyAlive) {
-            neat.evolve();
-            System.out.println(printer.render());
-            saver.save();
-
-            // Remake all games
-            games.clear();
-            for (int i = 0; i < totalGames; i++) {
-                Behavior behavior = new NeatBehavior(neat.getClients().get(i));
-                Board board = new Board(24, 24, behavior);
-                games.add(board);
-            }
-        }
+        if (simulation.getFailure() != null)
+            throw new IllegalStateException("Simulation thread failed", simulation.getFailure());
 
         ScreenUtils.clear(0.15f, 0.15f, 0.2f, 1f);
 
-        // Update the camera and set the batch's projection matrix
-        //camera.update();
+        // Write the boards that changed in the latest snapshot into the atlas
+        BoardSnapshot snapshot = snapshots.acquire();
+        int visibleCount;
+        try {
+            atlas.update(snapshot);
+            visibleCount = snapshot.getBoardCount();
+        } finally {
+            snapshots.release();
+        }
         batch.begin();
 
-        int renderCount = 0;
-        for (Board board : games) {
-            if (renderCount >= visibleGames.x * visibleGames.y)
-                break;
-
-            int x = renderCount % visibleGames.x;
-            int y = renderCount / visibleGames.x;
-            renderCount++;
+        // One quad for the whole background, then one quad per board. Both
+        // textures are drawn in world space, so the batch only flushes when
+        // it switches from the checkerboard to the atlas.
+        batch.draw(checkerboard, 0, 0, Trainer.BOARD_WIDTH * visibleGames.x, Trainer.BOARD_HEIGHT * visibleGames.y);
+        for (int slot = 0; slot < visibleCount; slot++) {
+            int x = slot % visibleGames.x;
+            int y = slot / visibleGames.x;
+            atlas.draw(batch, slot, x * Trainer.BOARD_WIDTH, y * Trainer.BOARD_HEIGHT);
+        }
 
-            batch.setProjectionMatrix(camera.combined.cpy().translate(x * 24, y * 24, 0));
+        batch.end();
+        reportFrame();
+    }
 
-            // Checkerboard pattern
-            if ((x + y) % 2 == 0) {
-                RenderUtil.drawRect(batch, 0, 0, 24, 24, Color.DARK_GRAY);
+    /**
+     * Creates a texture with one pixel per game, where every other game is
+     * dark gray. Stretched over the grid, it draws the checkerboard behind
+     * every board in one quad.
+     */
+    private static Texture createCheckerboard(int columns, int rows) {
+        Pixmap pixmap = new Pixmap(columns, rows, Pixmap.Format.RGBA8888);
+        pixmap.setBlending(Pixmap.Blending.None);
+        pixmap.setColor(Color.CLEAR);
+        pixmap.fill();
+        pixmap.setColor(Color.DARK_GRAY);
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < columns; x++) {
+                // Pixmaps start at the top left, the grid at the bottom left
+                if ((x + y) % 2 == 0)
+                    pixmap.drawPixel(x, rows - 1 - y);
             }
-
-            board.render(batch);
         }
 
-        batch.end();
+        Texture texture = new Texture(pixmap);
+        texture.setFilter(Texture.TextureFilter.Nearest, Texture.TextureFilter.Nearest);
+        pixmap.dispose();
+        return texture;
+    }
+
+    private void reportFrame() {
+        drawCalls = profiler.getDrawCalls();
+        flushes = batch.renderCalls;
+        profiler.reset();
+
+        // Log the counts of one frame every second
+        long now = System.nanoTime();
+        if (now - lastReport >= 1_000_000_000L) {
+            lastReport = now;
+            Gdx.app.log("Render", Gdx.graphics.getFramesPerSecond() + " fps, "
+                + drawCalls + " draw calls, " + flushes + " batch flushes, "
+                + atlas.getDirtyCount() + " boards redrawn");
+        }
     }
 
     @Override
     public void dispose() {
+        simulation.close();
+        trainer.close();
+        atlas.dispose();
+        checkerboard.dispose();
         batch.dispose();
     }
 }
@@ -0,0 +1,111 @@
+package com.buaisociety.snake;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lookup table from a cell and a {@link Direction} to the neighboring cell,
+ * with wrapping around the edges of the board already applied. Cells are
+ * packed as {@code y * width + x}.
+ *
+ * <p>Tables are immutable, so boards with the same dimensions share one
+ * instance through {@link #of(int, int)}.
+ */
+public final class NeighborTable {
+
+    private static final Map<Long, NeighborTable> CACHE = new ConcurrentHashMap<>();
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final int width;
+    private final int height;
+    private final int[] neighbors;
+    private final int[] xs;
+    private final int[] ys;
+
+    private NeighborTable(int width, int height) {
+        this.width = width;
+        this.height = height;
+
+        int area = width * height;
+        this.neighbors = new int[area * DIRECTIONS.length];
+        this.xs = new int[area];
+        this.ys = new int[area];
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int cell = y * width + x;
+                xs[cell] = x;
+                ys[cell] = y;
+
+                for (Direction direction : DIRECTIONS) {
+                    int nx = Math.floorMod(x + direction.getDx(), width);
+                    int ny = Math.floorMod(y + direction.getDy(), height);
+                    neighbors[cell * DIRECTIONS.length + direction.ordinal()] = ny * width + nx;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the table for boards with the given dimensions, building it the
+     * first time those dimensions are requested.
+     *
+     * @param width The width of the board.
+     * @param height The height of the board.
+     * @return the shared table for the given dimensions.
+     */
+    public static NeighborTable of(int width, int height) {
+        long key = ((long) width << 32) | (height & 0xFFFFFFFFL);
+        return CACHE.computeIfAbsent(key, k -> new NeighborTable(width, height));
+    }
+
+    /**
+     * Returns the width of the board.
+     *
+     * @return the width of the board.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the board.
+     *
+     * @return the height of the board.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the cell next to the given cell in the given direction. Cells on
+     * an edge wrap around to the opposite edge.
+     *
+     * @param cell The packed cell index.
+     * @param direction The direction to move in.
+     * @return the packed index of the neighboring cell.
+     */
+    public int next(int cell, Direction direction) {
+        return neighbors[cell * DIRECTIONS.length + direction.ordinal()];
+    }
+
+    /**
+     * Returns the x-coordinate of the given cell.
+     *
+     * @param cell The packed cell index.
+     * @return the x-coordinate of the cell.
+     */
+    public int getX(int cell) {
+        return xs[cell];
+    }
+
+    /**
+     * Returns the y-coordinate of the given cell.
+     *
+     * @param cell The packed cell index.
+     * @return the y-coordinate of the cell.
+     */
+    public int getY(int cell) {
+        return ys[cell];
+    }
+}
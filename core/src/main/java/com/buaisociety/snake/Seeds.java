@@ -0,0 +1,77 @@
+package com.buaisociety.snake;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Deterministic seeding scheme for reproducible runs. Every run has a master
+ * seed, every generation gets a seed split from the run seed, and every board
+ * gets a seed split from its generation's seed:
+ * <pre>{@code
+ *     long generationSeed = Seeds.split(runSeed, generation);
+ *     long boardSeed = Seeds.split(generationSeed, boardIndex);
+ * }</pre>
+ *
+ * <p>Splitting is based on SplitMix64, so each board gets an independent
+ * stream that does not depend on how many boards there are or which thread
+ * evaluates them. Replaying a board only needs the run seed, the generation
+ * and the board's index.
+ */
+public final class Seeds {
+
+    /**
+     * The SplitMix64 increment (the golden ratio as a 64-bit fraction).
+     */
+    public static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private Seeds() {
+    }
+
+    /**
+     * Returns a new, non-deterministic run seed.
+     *
+     * @return a random seed.
+     */
+    public static long random() {
+        return ThreadLocalRandom.current().nextLong();
+    }
+
+    /**
+     * Returns the seed of the {@code index}-th child stream of the given seed.
+     * This is the {@code index + 1}-th output of a SplitMix64 generator
+     * seeded with {@code seed}.
+     *
+     * @param seed The parent seed.
+     * @param index The index of the child, e.g. the generation or board index.
+     * @return the child seed.
+     */
+    public static long split(long seed, long index) {
+        return mix64(seed + GOLDEN_GAMMA * (index + 1));
+    }
+
+    /**
+     * The SplitMix64 finalizer. Advancing a state by {@link #GOLDEN_GAMMA}
+     * and mixing it produces the next random long of a SplitMix64 stream.
+     *
+     * @param z The state to mix.
+     * @return the mixed value.
+     */
+    public static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Maps a random long onto {@code [0, bound)} with a multiply instead of a
+     * division (Lemire's method). Unlike {@code random % bound}, every value
+     * gets the same share of the high 32 bits, give or take one, so the bias
+     * is at most {@code bound / 2^32}, far too small to matter.
+     *
+     * @param random A random long, e.g. from {@link #mix64(long)}.
+     * @param bound The exclusive upper bound, at least 1.
+     * @return a value in {@code [0, bound)}.
+     */
+    public static int bounded(long random, int bound) {
+        return (int) (((random >>> 32) * bound) >>> 32);
+    }
+}
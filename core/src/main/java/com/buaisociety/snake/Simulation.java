@@ -0,0 +1,544 @@
+package com.buaisociety.snake;
+
+import com.buaisociety.snake.behaviors.Behavior;
+
+import java.util.Arrays;
+
+/**
+ * Batched simulation engine that stores the state of many games of the same
+ * size in flat primitive arrays, one slot per game: head cells, directions,
+ * lengths, food cells, alive flags, the body ring buffers and one occupancy
+ * bitmap per game. {@link #update(int, int)} advances a range of games in a
+ * single tight loop over those arrays instead of chasing pointers through
+ * separate board and snake objects.
+ *
+ * <p>{@link Board} and {@link Snake} are thin views over one slot of a
+ * simulation, so rendering and the {@link Behavior} API keep working
+ * unchanged:
+ * <pre>{@code
+ *     Simulation simulation = new Simulation(24, 24, 10000);
+ *     for (int i = 0; i < simulation.getCapacity(); i++) {
+ *         simulation.getBoard(i).reset(new NeatBehavior(clients.get(i)), seed + i);
+ *     }
+ *     while (simulation.update(0, simulation.getCapacity())) {
+ *         // keep ticking until every snake is dead
+ *     }
+ * }</pre>
+ *
+ * <p>Each game also keeps a list of the cells its snake does not occupy.
+ * Cells are swapped in and out of the list as the snake moves, so food is
+ * placed with a single random pick no matter how full the board is. When the
+ * snake fills the whole board there is nowhere left to place food, and the
+ * game ends as a win (see {@link Board#isWon()}).
+ *
+ * <p>Every game counts the steps its snake took since it last ate. When the
+ * count reaches the {@link StarvationBudget} of the simulation, the snake
+ * starves (see {@link DeathCause#STARVATION}), so snakes that loop forever
+ * without eating cannot keep a generation running.
+ *
+ * <p>Every game has its own SplitMix64 random stream, stored as a single
+ * long and seeded by {@link Board#reset(Behavior, long)} (see {@link Seeds}),
+ * so a game's result only depends on its seed and its behavior.
+ *
+ * <p>Every game has a version that changes whenever anything visible on its
+ * board changes (see {@link Board#getVersion()}), so renderers can skip
+ * boards that did not change since they were last drawn.
+ *
+ * <p>When recording is enabled (see {@link #setRecording(boolean)}), every
+ * move is appended to a per-game buffer at 2 bits per move, so a game can be
+ * replayed from its seed and moves alone (see {@link Board#getMove(int)}).
+ *
+ * <p>Games never share state, so disjoint ranges may be updated on different
+ * threads (see {@link TickExecutor}).
+ */
+public class Simulation {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final DeathCause[] DEATH_CAUSES = DeathCause.values();
+
+    private final int width;
+    private final int height;
+    private final int area;
+    private final int words;
+    private final int capacity;
+    private final NeighborTable neighbors;
+    private StarvationBudget starvationBudget;
+    private boolean recording;
+
+    private final Board[] boards;
+    private final Behavior[] behaviors;
+    private final long[] seeds;
+    private final long[] randomStates;
+
+    private final int[] heads;
+    private final int[] headPointers;
+    private final int[] lengths;
+    private final int[] maxLengths;
+    private final byte[] directions;
+    private final int[] food;
+    private final boolean[] alive;
+    private final boolean[] won;
+    private final byte[] deathCauses;
+    private final int[] stepsSinceFood;
+    private final int[] stepLimits;
+    private final int[] versions;
+    private final long[][] moves;
+    private final int[] moveCounts;
+    private final int[] bodies;
+    private final long[] occupancy;
+    private final int[] freeCells;
+    private final int[] freeSlots;
+    private final int[] freeCounts;
+
+    /**
+     * Creates a simulation for the given number of games. Every game starts
+     * out empty and dead; use {@link Board#reset(Behavior, long)} on
+     * {@link #getBoard(int)} to start it.
+     *
+     * @param width The width of every board.
+     * @param height The height of every board.
+     * @param capacity The number of games.
+     */
+    public Simulation(int width, int height, int capacity) {
+        this.width = width;
+        this.height = height;
+        this.area = width * height;
+        this.words = (area + 63) >>> 6;
+        this.capacity = capacity;
+        this.neighbors = NeighborTable.of(width, height);
+        this.starvationBudget = StarvationBudget.UNLIMITED;
+
+        this.boards = new Board[capacity];
+        this.behaviors = new Behavior[capacity];
+        this.seeds = new long[capacity];
+        this.randomStates = new long[capacity];
+
+        this.heads = new int[capacity];
+        this.headPointers = new int[capacity];
+        this.lengths = new int[capacity];
+        this.maxLengths = new int[capacity];
+        this.directions = new byte[capacity];
+        this.food = new int[capacity];
+        this.alive = new boolean[capacity];
+        this.won = new boolean[capacity];
+        this.deathCauses = new byte[capacity];
+        this.stepsSinceFood = new int[capacity];
+        this.stepLimits = new int[capacity];
+        this.versions = new int[capacity];
+        this.moves = new long[capacity][];
+        this.moveCounts = new int[capacity];
+        this.bodies = new int[capacity * area];
+        this.occupancy = new long[capacity * words];
+        this.freeCells = new int[capacity * area];
+        this.freeSlots = new int[capacity * area];
+        this.freeCounts = new int[capacity];
+        Arrays.fill(food, -1);
+    }
+
+    /**
+     * Returns the width of every board.
+     *
+     * @return the width of every board.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of every board.
+     *
+     * @return the height of every board.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the neighbor lookup table shared by every board.
+     *
+     * @return the neighbor lookup table.
+     */
+    public NeighborTable getNeighbors() {
+        return neighbors;
+    }
+
+    /**
+     * Returns how many steps snakes may take without eating.
+     *
+     * @return the starvation budget.
+     */
+    public StarvationBudget getStarvationBudget() {
+        return starvationBudget;
+    }
+
+    /**
+     * Sets how many steps snakes may take without eating. The default is
+     * {@link StarvationBudget#UNLIMITED}. Running games switch to the new
+     * budget right away, so a snake that already went longer than the new
+     * budget without eating starves on its next update.
+     *
+     * @param starvationBudget the new starvation budget.
+     */
+    public void setStarvationBudget(StarvationBudget starvationBudget) {
+        this.starvationBudget = starvationBudget;
+        for (int game = 0; game < capacity; game++) {
+            stepLimits[game] = starvationBudget.getSteps(maxLengths[game], area);
+        }
+    }
+
+    /**
+     * Returns whether the moves of every game are recorded.
+     *
+     * @return whether moves are recorded.
+     */
+    public boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * Sets whether the moves of every game are recorded. Recording costs a
+     * few bit operations per move, and 2 bits of memory per move. Games that
+     * are already running only record the moves made from now on, so change
+     * this before resetting the boards.
+     *
+     * @param recording whether to record moves.
+     */
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Returns the number of games in this simulation.
+     *
+     * @return the number of games.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the board view of the given game, creating it on first use.
+     *
+     * @param game The index of the game.
+     * @return the board view of the game.
+     */
+    public Board getBoard(int game) {
+        Board board = boards[game];
+        if (board == null)
+            board = new Board(this, game);
+        return board;
+    }
+
+    void register(int game, Board board) {
+        if (boards[game] != null)
+            throw new IllegalStateException("Game " + game + " already has a board");
+
+        boards[game] = board;
+    }
+
+    /**
+     * Updates every game in {@code [from, to)} that is still running, meaning
+     * its snake is neither dead nor has won.
+     *
+     * @param from The first game to update (inclusive).
+     * @param to The last game to update (exclusive).
+     * @return true if any game in the range was running at the start of the tick.
+     */
+    public boolean update(int from, int to) {
+        boolean anyAlive = false;
+        for (int game = from; game < to; game++) {
+            if (!alive[game])
+                continue;
+
+            anyAlive = true;
+            update(game);
+        }
+        return anyAlive;
+    }
+
+    /**
+     * Updates the state of one game, see {@link Board#update()}.
+     *
+     * @param game The index of the game.
+     */
+    void update(int game) {
+        // Happens when the game is first started. We don't place the food when
+        // the board is reset because we need the snake to be built first.
+        if (food[game] < 0) {
+            food[game] = newFoodCell(game);
+            versions[game]++;
+        }
+
+        // When we eat food, we increase the length of the snake and move the food
+        if (heads[game] == food[game]) {
+            maxLengths[game]++;
+            stepsSinceFood[game] = 0;
+            stepLimits[game] = starvationBudget.getSteps(maxLengths[game], area);
+            food[game] = newFoodCell(game);
+            versions[game]++;
+
+            // The snake fills the whole board, so there is nowhere left to go
+            if (food[game] < 0) {
+                won[game] = true;
+                alive[game] = false;
+                return;
+            }
+        }
+
+        // Snakes that go too long without eating starve
+        if (stepsSinceFood[game] >= stepLimits[game]) {
+            alive[game] = false;
+            deathCauses[game] = (byte) DeathCause.STARVATION.ordinal();
+            return;
+        }
+
+        // Move the snake
+        move(game);
+        stepsSinceFood[game]++;
+    }
+
+    /**
+     * Moves the snake of one game, see {@link Snake#update()}.
+     *
+     * @param game The index of the game.
+     */
+    void move(int game) {
+        Direction current = DIRECTIONS[directions[game]];
+        Direction desired = behaviors[game].getDirection();
+        if (desired != current.opposite()) {
+            current = desired;
+            directions[game] = (byte) desired.ordinal();
+        }
+        if (recording)
+            record(game, current.ordinal());
+
+        // The neighbor table already wraps locations around the board
+        int next = neighbors.next(heads[game], current);
+        if (containsCell(game, next)) {
+            alive[game] = false;
+            deathCauses[game] = (byte) DeathCause.COLLISION.ordinal();
+            return;
+        }
+
+        push(game, next);
+    }
+
+    /**
+     * Adds a new head to the snake of one game, dropping the tail if the
+     * snake grew past its max length. The cell must not be occupied.
+     *
+     * @param game The index of the game.
+     * @param cell The packed cell index of the new head.
+     */
+    void push(int game, int cell) {
+        int base = game * area;
+        int length = lengths[game];
+        int pointer = headPointers[game];
+        if (length == 0 || ++pointer == area)
+            pointer = 0;
+
+        headPointers[game] = pointer;
+        bodies[base + pointer] = cell;
+        occupancy[game * words + (cell >>> 6)] |= 1L << cell;
+        removeFreeCell(base, game, cell);
+        heads[game] = cell;
+        versions[game]++;
+        length++;
+
+        // If the snake exceeds its maximum length, remove the tail
+        if (length > maxLengths[game]) {
+            int tailPointer = pointer - (length - 1);
+            if (tailPointer < 0)
+                tailPointer += area;
+
+            int tail = bodies[base + tailPointer];
+            occupancy[game * words + (tail >>> 6)] &= ~(1L << tail);
+            addFreeCell(base, game, tail);
+            length--;
+        }
+        lengths[game] = length;
+    }
+
+    private void record(int game, int direction) {
+        int count = moveCounts[game]++;
+        long[] words = moves[game];
+        int word = count >>> 5;
+        if (words == null || word == words.length) {
+            words = words == null ? new long[16] : Arrays.copyOf(words, words.length * 2);
+            moves[game] = words;
+        }
+        words[word] |= (long) direction << ((count & 31) << 1);
+    }
+
+    private void removeFreeCell(int base, int game, int cell) {
+        // Move the last free cell into the removed cell's slot
+        int slot = freeSlots[base + cell];
+        int last = freeCells[base + --freeCounts[game]];
+        freeCells[base + slot] = last;
+        freeSlots[base + last] = slot;
+    }
+
+    private void addFreeCell(int base, int game, int cell) {
+        int slot = freeCounts[game]++;
+        freeCells[base + slot] = cell;
+        freeSlots[base + cell] = slot;
+    }
+
+    /**
+     * Returns a random cell that is not occupied by the snake of the given
+     * game, or -1 if the snake fills the whole board.
+     *
+     * @param game The index of the game.
+     * @return the packed index of a free cell, or -1.
+     */
+    int newFoodCell(int game) {
+        int freeCount = freeCounts[game];
+        if (freeCount == 0)
+            return -1;
+
+        return freeCells[game * area + nextInt(game, freeCount)];
+    }
+
+    /**
+     * Returns the next random int in {@code [0, bound)} from the stream of the
+     * given game.
+     */
+    private int nextInt(int game, int bound) {
+        return Seeds.bounded(Seeds.mix64(randomStates[game] += Seeds.GOLDEN_GAMMA), bound);
+    }
+
+    /**
+     * Clears the board state of one game (the food) and reseeds its random
+     * number generator. The snake is reset separately.
+     */
+    void resetBoard(int game, long seed) {
+        seeds[game] = seed;
+        randomStates[game] = seed;
+        food[game] = -1;
+        won[game] = false;
+        versions[game]++;
+    }
+
+    /**
+     * Removes every body segment from the snake of one game and brings it
+     * back to life with the given max length, moving right. The snake gets
+     * a fresh starvation budget.
+     */
+    void resetSnake(int game, int maxLength) {
+        Arrays.fill(occupancy, game * words, (game + 1) * words, 0L);
+        int base = game * area;
+        for (int cell = 0; cell < area; cell++) {
+            freeCells[base + cell] = cell;
+            freeSlots[base + cell] = cell;
+        }
+        freeCounts[game] = area;
+        headPointers[game] = 0;
+        lengths[game] = 0;
+        maxLengths[game] = maxLength;
+        directions[game] = (byte) Direction.RIGHT.ordinal();
+        alive[game] = true;
+        deathCauses[game] = (byte) DeathCause.NONE.ordinal();
+        stepsSinceFood[game] = 0;
+        stepLimits[game] = starvationBudget.getSteps(maxLength, area);
+        versions[game]++;
+
+        // Reuse the move buffer of the last game
+        long[] words = moves[game];
+        if (words != null)
+            Arrays.fill(words, 0, Math.min(words.length, (moveCounts[game] + 31) >>> 5), 0L);
+        moveCounts[game] = 0;
+    }
+
+    boolean containsCell(int game, int cell) {
+        return (occupancy[game * words + (cell >>> 6)] & (1L << cell)) != 0;
+    }
+
+    int getSegment(int game, int index) {
+        int pointer = headPointers[game] - index;
+        if (pointer < 0)
+            pointer += area;
+        return bodies[game * area + pointer];
+    }
+
+    long getSeed(int game) {
+        return seeds[game];
+    }
+
+    Behavior getBehavior(int game) {
+        return behaviors[game];
+    }
+
+    void setBehavior(int game, Behavior behavior) {
+        behaviors[game] = behavior;
+    }
+
+    int getHead(int game) {
+        return heads[game];
+    }
+
+    int getLength(int game) {
+        return lengths[game];
+    }
+
+    int getMaxLength(int game) {
+        return maxLengths[game];
+    }
+
+    void setMaxLength(int game, int maxLength) {
+        maxLengths[game] = maxLength;
+    }
+
+    Direction getDirection(int game) {
+        return DIRECTIONS[directions[game]];
+    }
+
+    void setDirection(int game, Direction direction) {
+        directions[game] = (byte) direction.ordinal();
+    }
+
+    int getFood(int game) {
+        return food[game];
+    }
+
+    void setFood(int game, int cell) {
+        food[game] = cell;
+        versions[game]++;
+    }
+
+    boolean isAlive(int game) {
+        return alive[game];
+    }
+
+    boolean isWon(int game) {
+        return won[game];
+    }
+
+    DeathCause getDeathCause(int game) {
+        return DEATH_CAUSES[deathCauses[game]];
+    }
+
+    int getStepsSinceFood(int game) {
+        return stepsSinceFood[game];
+    }
+
+    int getStepLimit(int game) {
+        return stepLimits[game];
+    }
+
+    int getVersion(int game) {
+        return versions[game];
+    }
+
+    int getMoveCount(int game) {
+        return moveCounts[game];
+    }
+
+    Direction getMove(int game, int index) {
+        int bits = (int) (moves[game][index >>> 5] >>> ((index & 31) << 1)) & 3;
+        return DIRECTIONS[bits];
+    }
+
+    void markChanged(int game) {
+        versions[game]++;
+    }
+}
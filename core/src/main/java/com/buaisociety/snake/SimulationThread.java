@@ -0,0 +1,119 @@
+package com.buaisociety.snake;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a {@link Trainer} on its own thread, paced by a {@link GameLoop}, and
+ * publishes a {@link BoardSnapshot} of the visible boards after every batch
+ * of due ticks. At high speeds, ticks are run until the loop's frame budget
+ * runs out, so the renderer still gets a fresh snapshot every frame.
+ * The render thread only draws the latest snapshot, so a slow frame does not
+ * slow down training, and a slow {@link Trainer#evolve()} does not freeze the
+ * window.
+ *
+ * <p>Once started, the trainer must only be used from this thread. If the
+ * trainer throws, the thread stops and the exception is available from
+ * {@link #getFailure()}.
+ */
+public class SimulationThread implements AutoCloseable {
+
+    private final Trainer trainer;
+    private final GameLoop gameLoop;
+    private final SnapshotBuffer snapshots;
+    private final Thread thread;
+
+    private volatile boolean running;
+    private volatile long ticks;
+    private volatile Throwable failure;
+
+    /**
+     * Creates a simulation thread. The thread does not run until
+     * {@link #start()} is called.
+     *
+     * @param trainer The trainer to run.
+     * @param gameLoop Paces the ticks.
+     * @param snapshots Receives a snapshot after every batch of ticks.
+     */
+    public SimulationThread(Trainer trainer, GameLoop gameLoop, SnapshotBuffer snapshots) {
+        this.trainer = trainer;
+        this.gameLoop = gameLoop;
+        this.snapshots = snapshots;
+        this.thread = new Thread(this::run, "Simulation");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Starts ticking the trainer.
+     */
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Returns the number of ticks run so far, across every generation.
+     *
+     * @return the number of ticks run so far.
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Returns the exception that stopped the thread, or null if it is still
+     * running or was closed normally.
+     *
+     * @return the exception that stopped the thread, or null.
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    private void run() {
+        try {
+            snapshots.publish(trainer.getGames(), ticks);
+            while (running) {
+                // Sleep until the next tick is due
+                int due = gameLoop.pollTicks();
+                if (due == 0) {
+                    long wait = gameLoop.nanoBeforeNextTick();
+                    if (wait > 0)
+                        LockSupport.parkNanos(wait);
+                    continue;
+                }
+
+                long deadline = System.nanoTime() + gameLoop.getFrameBudgetNanos();
+                for (int i = 0; i < due && running; i++) {
+                    if (trainer.getSteadyState() != null) {
+                        trainer.tickSteadyState();
+                    } else if (!trainer.tick()) {
+                        // If all games are dead, evolve the population
+                        trainer.evolve();
+                    }
+                    ticks++;
+
+                    if (System.nanoTime() >= deadline)
+                        break;
+                }
+
+                snapshots.publish(trainer.getGames(), ticks);
+            }
+        } catch (Throwable e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Stops ticking and waits for the current tick (or evolution) to finish.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -6,11 +6,8 @@ import com.buaisociety.snake.behaviors.Behavior;
 import org.joml.Vector2i;
 import org.joml.Vector2ic;
 
-import java.util.Deque;
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Set;
+import java.util.NoSuchElementException;
 
 /**
  * Represents a snake in the game. The snake is stored as a queue of positions.
@@ -18,9 +15,22 @@ import java.util.Set;
  * last element. The snake can move by adding a new head to the front of the
  * queue and removing the tail. The snake can grow by not removing the tail.
  *
- * <p>You can iterate over the snake's body segments using a for-each loop:
+ * <p>The queue is a circular buffer of packed cell indices
+ * ({@code y * width + x}) sized to the area of the board, so moving never
+ * allocates. Use {@link #getLength()}, {@link #getSegmentX(int)} and
+ * {@link #getSegmentY(int)} to read the body without boxing:
  * <pre>{@code
- *     Snake snake = new Snake(3);
+ *     for (int i = 0; i < snake.getLength(); i++) {
+ *         int x = snake.getSegmentX(i);  // i == 0 is the head
+ *         int y = snake.getSegmentY(i);
+ *     }
+ * }</pre>
+ *
+ * <p>You can also iterate over the snake's body segments using a for-each
+ * loop, which creates a new vector for each segment:
+ * <pre>{@code
+ *     Snake snake = board.getSnake();
+ *     snake.reset();
  *     snake.add(new Vector2i(0, 0));  // will be our tail
  *     snake.add(new Vector2i(1, 0));
  *     snake.add(new Vector2i(2, 0));  // will be our head
@@ -28,33 +38,49 @@ import java.util.Set;
  *         System.out.println(segment);
  *     }
  * }</pre>
+ *
+ * <p>The cells occupied by the snake are also tracked in a bitset indexed by
+ * {@code y * width + x}, so {@link #contains(int, int)} is a single bit test.
+ *
+ * <p>A snake is a view over one game of its board's {@link Simulation}, which
+ * stores the buffer, the bitset and the rest of the snake's state. Snakes are
+ * only created by their {@link Board}, see {@link Board#getSnake()}, so two
+ * snakes never share the state of one game.
  */
 public class Snake implements Iterable<Vector2i> {
 
     private final Board board;
-    private final Deque<Vector2i> bodySegments;
-    private final Set<Vector2i> positions;
-    private int maxLength;
-    private Direction currentDirection;
-    private Behavior behavior;
+    private final Simulation simulation;
+    private final int game;
+    private final Vector2i head;
+    private final int startingMaxLength;
     private Color color;
-    private boolean isDead;
 
     /**
-     * Creates a new snake with the given maximum length.
+     * Creates the snake of the given board. The snake has no body segments
+     * until it is {@link #reset()} and built with {@link #add(int, int)}.
      *
      * @param board The board that the snake is on.
      * @param maxLength The starting maximum length of the snake.
      * @param behavior The behavior of the snake.
      */
-    public Snake(Board board, int maxLength, Behavior behavior) {
+    Snake(Board board, int maxLength, Behavior behavior) {
         this.board = board;
-        this.maxLength = maxLength;
-        this.bodySegments = new LinkedList<>();
-        this.positions = new HashSet<>();
-        this.currentDirection = Direction.RIGHT;
-        this.behavior = behavior;
+        this.simulation = board.getSimulation();
+        this.game = board.getIndex();
+        this.head = new Vector2i();
+        this.startingMaxLength = maxLength;
         this.color = Color.WHITE;
+        simulation.setBehavior(game, behavior);
+    }
+
+    /**
+     * Removes every body segment and restores the starting max length and
+     * direction, so the snake can be reused for a new game. The backing
+     * storage is kept.
+     */
+    public void reset() {
+        simulation.resetSnake(game, startingMaxLength);
     }
 
     /**
@@ -72,7 +98,7 @@ public class Snake implements Iterable<Vector2i> {
      * @return the current max length of the snake.
      */
     public int getMaxLength() {
-        return maxLength;
+        return simulation.getMaxLength(game);
     }
 
     /**
@@ -83,10 +109,10 @@ public class Snake implements Iterable<Vector2i> {
      * @param maxLength the new max length of the snake.
      */
     public void setMaxLength(int maxLength) {
-        if (maxLength < this.maxLength)
+        if (maxLength < getMaxLength())
             throw new IllegalArgumentException("Cannot set max length to less than current length");
 
-        this.maxLength = maxLength;
+        simulation.setMaxLength(game, maxLength);
 
     }
 
@@ -98,7 +124,7 @@ public class Snake implements Iterable<Vector2i> {
      * @return the current direction of the snake.
      */
     public Direction getCurrentDirection() {
-        return currentDirection;
+        return simulation.getDirection(game);
     }
 
     /**
@@ -108,7 +134,7 @@ public class Snake implements Iterable<Vector2i> {
      * @param currentDirection the new direction of the snake.
      */
     public void setCurrentDirection(Direction currentDirection) {
-        this.currentDirection = currentDirection;
+        simulation.setDirection(game, currentDirection);
     }
 
     /**
@@ -118,7 +144,7 @@ public class Snake implements Iterable<Vector2i> {
      * @return the behavior of the snake.
      */
     public Behavior getBehavior() {
-        return behavior;
+        return simulation.getBehavior(game);
     }
 
     /**
@@ -128,7 +154,16 @@ public class Snake implements Iterable<Vector2i> {
      * @param behavior the new behavior of the snake.
      */
     public void setBehavior(Behavior behavior) {
-        this.behavior = behavior;
+        simulation.setBehavior(game, behavior);
+    }
+
+    /**
+     * Returns the color of the snake. The color is used to render the snake.
+     *
+     * @return the color of the snake.
+     */
+    public Color getColor() {
+        return color;
     }
 
     /**
@@ -138,24 +173,133 @@ public class Snake implements Iterable<Vector2i> {
      */
     public void setColor(Color color) {
         this.color = color;
+        simulation.markChanged(game);
     }
 
     /**
-     * Returns whether the snake is dead.
+     * Returns whether the snake is dead. A snake that filled the whole board
+     * is not dead (see {@link Board#isWon()}).
      *
      * @return whether the snake is dead.
      */
     public boolean isDead() {
-        return isDead;
+        return !simulation.isAlive(game) && !simulation.isWon(game);
+    }
+
+    /**
+     * Returns why the snake died, or {@link DeathCause#NONE} if it is still
+     * alive or filled the whole board.
+     *
+     * @return why the snake died.
+     */
+    public DeathCause getDeathCause() {
+        return simulation.getDeathCause(game);
+    }
+
+    /**
+     * Returns the number of steps the snake took since it last ate (or since
+     * the game started).
+     *
+     * @return the number of steps since the snake last ate.
+     */
+    public int getStepsSinceFood() {
+        return simulation.getStepsSinceFood(game);
+    }
+
+    /**
+     * Returns the number of steps the snake may take without eating before
+     * it starves. See {@link StarvationBudget}.
+     *
+     * @return the number of steps the snake may take without eating.
+     */
+    public int getStepLimit() {
+        return simulation.getStepLimit(game);
     }
 
     /**
-     * Returns the current position of the head of the snake.
+     * Returns the current position of the head of the snake. The returned
+     * vector is updated in place, so copy it if you need to remember a
+     * position.
      *
      * @return the current position of the head of the snake.
      */
     public Vector2ic getHead() {
-        return bodySegments.getFirst();
+        return head.set(getHeadX(), getHeadY());
+    }
+
+    /**
+     * Returns the packed cell index ({@code y * width + x}) of the head of
+     * the snake.
+     *
+     * @return the packed cell index of the head.
+     */
+    public int getHeadCell() {
+        return simulation.getHead(game);
+    }
+
+    /**
+     * Returns the x-coordinate of the head of the snake.
+     *
+     * @return the x-coordinate of the head of the snake.
+     */
+    public int getHeadX() {
+        return simulation.getNeighbors().getX(simulation.getHead(game));
+    }
+
+    /**
+     * Returns the y-coordinate of the head of the snake.
+     *
+     * @return the y-coordinate of the head of the snake.
+     */
+    public int getHeadY() {
+        return simulation.getNeighbors().getY(simulation.getHead(game));
+    }
+
+    /**
+     * Returns the number of body segments, including the head.
+     *
+     * @return the number of body segments.
+     */
+    public int getLength() {
+        return simulation.getLength(game);
+    }
+
+    /**
+     * Returns the packed cell index ({@code y * width + x}) of the segment at
+     * the given index. Index 0 is the head, and {@code getLength() - 1} is the
+     * tail.
+     *
+     * @param index the index of the segment.
+     * @return the packed cell index of the segment.
+     */
+    public int getSegment(int index) {
+        int length = getLength();
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("Segment " + index + " out of bounds for length " + length);
+
+        return simulation.getSegment(game, index);
+    }
+
+    /**
+     * Returns the x-coordinate of the segment at the given index. Index 0 is
+     * the head.
+     *
+     * @param index the index of the segment.
+     * @return the x-coordinate of the segment.
+     */
+    public int getSegmentX(int index) {
+        return board.getNeighbors().getX(getSegment(index));
+    }
+
+    /**
+     * Returns the y-coordinate of the segment at the given index. Index 0 is
+     * the head.
+     *
+     * @param index the index of the segment.
+     * @return the y-coordinate of the segment.
+     */
+    public int getSegmentY(int index) {
+        return board.getNeighbors().getY(getSegment(index));
     }
 
     /**
@@ -164,8 +308,30 @@ public class Snake implements Iterable<Vector2i> {
      * @param position the position to check.
      * @return whether the snake contains the given position.
      */
-    public boolean contains(Vector2i position) {
-        return positions.contains(position);
+    public boolean contains(Vector2ic position) {
+        return contains(position.x(), position.y());
+    }
+
+    /**
+     * Returns whether the snake contains the given position.
+     *
+     * @param x the x-coordinate of the position to check.
+     * @param y the y-coordinate of the position to check.
+     * @return whether the snake contains the given position.
+     */
+    public boolean contains(int x, int y) {
+        return containsCell(y * board.getWidth() + x);
+    }
+
+    /**
+     * Returns whether the snake contains the given packed cell index
+     * ({@code y * width + x}).
+     *
+     * @param cell the packed cell index to check.
+     * @return whether the snake contains the given cell.
+     */
+    public boolean containsCell(int cell) {
+        return simulation.containsCell(game, cell);
     }
 
     /**
@@ -175,51 +341,35 @@ public class Snake implements Iterable<Vector2i> {
      *
      * @param newHead the new head of the snake.
      */
-    public void add(Vector2i newHead) {
-        if (contains(newHead)) {
-            throw new IllegalArgumentException("Cannot move to a position already occupied by the snake");
-        }
+    public void add(Vector2ic newHead) {
+        add(newHead.x(), newHead.y());
+    }
 
-        // Add new head to the front of the deque and the positions set
-        bodySegments.addFirst(new Vector2i(newHead));
-        positions.add(new Vector2i(newHead));
+    /**
+     * "Moves" the snake by adding a new head to the front of the snake and removing
+     * the tail. If the snake is at its maximum length, the tail will be removed
+     * after the new head is added.
+     *
+     * @param x the x-coordinate of the new head of the snake.
+     * @param y the y-coordinate of the new head of the snake.
+     */
+    public void add(int x, int y) {
+        addCell(y * board.getWidth() + x);
+    }
 
-        // If the snake exceeds its maximum length, remove the tail
-        if (bodySegments.size() > maxLength) {
-            Vector2i tail = bodySegments.removeLast();
-            positions.remove(tail);
+    private void addCell(int cell) {
+        if (simulation.containsCell(game, cell)) {
+            throw new IllegalArgumentException("Cannot move to a position already occupied by the snake");
         }
+
+        simulation.push(game, cell);
     }
 
     /**
      * Moves the snake in the current direction.
      */
     public void update() {
-        Direction newDirection = behavior.getDirection();
-        if (newDirection != currentDirection.opposite()) {
-            currentDirection = newDirection;
-        }
-        Vector2i newHead = currentDirection.getVector().add(getHead());
-
-        // Wrap new locations around the board
-        if (newHead.x() < 0) {
-            newHead.x = board.getWidth() - 1;
-        } else if (newHead.x() >= board.getWidth()) {
-            newHead.x = 0;
-        }
-
-        if (newHead.y() < 0) {
-            newHead.y = board.getHeight() - 1;
-        } else if (newHead.y() >= board.getHeight()) {
-            newHead.y = 0;
-        }
-
-        if (contains(newHead)) {
-            isDead = true;
-            return;
-        }
-
-        add(newHead);
+        simulation.move(game);
     }
 
     /**
@@ -228,13 +378,37 @@ public class Snake implements Iterable<Vector2i> {
      * @param batch the sprite batch to render to.
      */
     public void render(SpriteBatch batch) {
-        for (Vector2i segment : bodySegments) {
-            RenderUtil.drawPixel(batch, segment.x(), segment.y(), color);
+        for (int i = 0; i < getLength(); i++) {
+            RenderUtil.drawPixel(batch, getSegmentX(i), getSegmentY(i), color);
         }
     }
 
+    /**
+     * Returns an iterator over copies of the body segments, from head to tail.
+     * Prefer {@link #getSegmentX(int)} and {@link #getSegmentY(int)} in hot
+     * code, since this creates a new vector for every segment.
+     *
+     * @return an iterator over the body segments.
+     */
     @Override
     public Iterator<Vector2i> iterator() {
-        return bodySegments.iterator();
+        return new Iterator<>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < getLength();
+            }
+
+            @Override
+            public Vector2i next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                Vector2i segment = new Vector2i(getSegmentX(index), getSegmentY(index));
+                index++;
+                return segment;
+            }
+        };
     }
 }
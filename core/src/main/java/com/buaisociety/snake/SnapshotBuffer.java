@@ -0,0 +1,88 @@
+package com.buaisociety.snake;
+
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands {@link BoardSnapshot}s from the simulation thread to the render
+ * thread. The simulation thread fills the back snapshot after every tick and
+ * swaps it with the front snapshot; the render thread only ever reads the
+ * front snapshot:
+ * <pre>{@code
+ *     // simulation thread
+ *     buffer.publish(trainer.getGames(), tick);
+ *
+ *     // render thread
+ *     BoardSnapshot snapshot = buffer.acquire();
+ *     try {
+ *         atlas.update(snapshot);
+ *     } finally {
+ *         buffer.release();
+ *     }
+ * }</pre>
+ *
+ * <p>The swap only happens when the render thread is not holding the front
+ * snapshot. If it is, the simulation thread does not wait; it keeps the back
+ * snapshot and refreshes it again after the next tick, so training never
+ * waits for a frame.
+ */
+public class SnapshotBuffer {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private BoardSnapshot front;
+    private BoardSnapshot back;
+
+    /**
+     * Creates a buffer of two empty snapshots.
+     *
+     * @param width The width of every board.
+     * @param height The height of every board.
+     * @param slots The maximum number of boards in a snapshot.
+     */
+    public SnapshotBuffer(int width, int height, int slots) {
+        this.front = new BoardSnapshot(width, height, slots);
+        this.back = new BoardSnapshot(width, height, slots);
+    }
+
+    /**
+     * Copies the boards into the back snapshot and, unless the render thread
+     * is reading, makes it the front snapshot. Only call this from the thread
+     * that updates the boards.
+     *
+     * @param boards The boards to copy.
+     * @param tick The number of ticks the simulation ran so far.
+     * @return true if the snapshot was swapped to the front.
+     */
+    public boolean publish(List<Board> boards, long tick) {
+        back.copy(boards, tick);
+        if (!lock.tryLock())
+            return false;
+
+        try {
+            BoardSnapshot published = back;
+            back = front;
+            front = published;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the latest published snapshot, and keeps it from being written
+     * until {@link #release()} is called.
+     *
+     * @return the latest snapshot.
+     */
+    public BoardSnapshot acquire() {
+        lock.lock();
+        return front;
+    }
+
+    /**
+     * Releases the snapshot returned by {@link #acquire()}.
+     */
+    public void release() {
+        lock.unlock();
+    }
+}
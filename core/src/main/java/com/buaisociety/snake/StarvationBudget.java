@@ -0,0 +1,139 @@
+package com.buaisociety.snake;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The number of steps a snake may take without eating before it starves (see
+ * {@link DeathCause#STARVATION}). Without a budget, a snake that loops forever
+ * without eating or hitting itself never dies, and its generation never ends.
+ *
+ * <p>The budget is {@code baseSteps + stepsPerSegment * maxLength +
+ * stepsPerCell * area}, so it can grow with the snake (long snakes need more
+ * room to turn around) or with the board (food is further away on big
+ * boards). It is recomputed every time the snake eats:
+ * <pre>{@code
+ *     // 100 steps, plus 2 steps for every segment the snake may grow to
+ *     StarvationBudget budget = new StarvationBudget(100, 2f, 0f);
+ * }</pre>
+ */
+public final class StarvationBudget {
+
+    /**
+     * Snakes never starve.
+     */
+    public static final StarvationBudget UNLIMITED = new StarvationBudget(Integer.MAX_VALUE, 0f, 0f);
+
+    /**
+     * One step for every cell of the board, which is enough to reach any
+     * food on the board no matter where it is placed.
+     */
+    public static final StarvationBudget DEFAULT = new StarvationBudget(0, 0f, 1f);
+
+    /**
+     * The number of bytes {@link #write(ByteBuffer)} writes.
+     */
+    public static final int ENCODED_BYTES = 4 + 4 + 4;
+
+    private final int baseSteps;
+    private final float stepsPerSegment;
+    private final float stepsPerCell;
+
+    /**
+     * Creates a starvation budget.
+     *
+     * @param baseSteps The number of steps every snake gets.
+     * @param stepsPerSegment The extra steps for every segment of the snake's
+     *                        max length.
+     * @param stepsPerCell The extra steps for every cell of the board.
+     */
+    public StarvationBudget(int baseSteps, float stepsPerSegment, float stepsPerCell) {
+        if (baseSteps < 0 || stepsPerSegment < 0f || stepsPerCell < 0f)
+            throw new IllegalArgumentException("Budget cannot be negative");
+        if (baseSteps == 0 && stepsPerSegment == 0f && stepsPerCell == 0f)
+            throw new IllegalArgumentException("Budget must allow at least 1 step, use UNLIMITED to disable starvation");
+
+        this.baseSteps = baseSteps;
+        this.stepsPerSegment = stepsPerSegment;
+        this.stepsPerCell = stepsPerCell;
+    }
+
+    /**
+     * Returns the number of steps every snake gets.
+     *
+     * @return the base number of steps.
+     */
+    public int getBaseSteps() {
+        return baseSteps;
+    }
+
+    /**
+     * Returns the extra steps for every segment of the snake's max length.
+     *
+     * @return the steps per segment.
+     */
+    public float getStepsPerSegment() {
+        return stepsPerSegment;
+    }
+
+    /**
+     * Returns the extra steps for every cell of the board.
+     *
+     * @return the steps per cell.
+     */
+    public float getStepsPerCell() {
+        return stepsPerCell;
+    }
+
+    /**
+     * Returns how many steps a snake may take without eating.
+     *
+     * @param maxLength The max length of the snake.
+     * @param area The number of cells on the board.
+     * @return the number of steps, at least 1.
+     */
+    public int getSteps(int maxLength, int area) {
+        double steps = (double) baseSteps + (double) stepsPerSegment * maxLength + (double) stepsPerCell * area;
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, steps));
+    }
+
+    /**
+     * Writes the budget, all big-endian: {@code int baseSteps} ({@code -1}
+     * for {@link #UNLIMITED}), {@code float stepsPerSegment},
+     * {@code float stepsPerCell}.
+     *
+     * @param buffer The buffer to write to.
+     */
+    public void write(ByteBuffer buffer) {
+        boolean unlimited = this == UNLIMITED;
+        buffer.putInt(unlimited ? -1 : baseSteps)
+            .putFloat(unlimited ? 0f : stepsPerSegment)
+            .putFloat(unlimited ? 0f : stepsPerCell);
+    }
+
+    /**
+     * Reads a budget written by {@link #write(ByteBuffer)}.
+     *
+     * @param buffer The buffer to read from.
+     * @return the budget.
+     * @throws IllegalArgumentException if the buffer does not hold a budget.
+     * @throws java.nio.BufferUnderflowException if the buffer is too short.
+     */
+    public static StarvationBudget read(ByteBuffer buffer) {
+        int baseSteps = buffer.getInt();
+        float stepsPerSegment = buffer.getFloat();
+        float stepsPerCell = buffer.getFloat();
+        return baseSteps < 0 ? UNLIMITED : new StarvationBudget(baseSteps, stepsPerSegment, stepsPerCell);
+    }
+
+    @Override
+    public String toString() {
+        if (this == UNLIMITED)
+            return "StarvationBudget{unlimited}";
+
+        return "StarvationBudget{" +
+            "baseSteps=" + baseSteps +
+            ", stepsPerSegment=" + stepsPerSegment +
+            ", stepsPerCell=" + stepsPerCell +
+            '}';
+    }
+}
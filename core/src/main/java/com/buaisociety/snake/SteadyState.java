@@ -0,0 +1,220 @@
+package com.buaisociety.snake;
+
+import com.cjcrafter.neat.Client;
+import com.cjcrafter.neat.genome.Genome;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Steady-state evolution: instead of waiting for every snake of a generation
+ * to die, a client is replaced as soon as its games are over. Its score is
+ * recorded in an archive of the best genomes evaluated so far, and its slot
+ * in the population gets an offspring of a parent picked from the archive by
+ * tournament selection. The offspring starts playing on the freed boards
+ * right away, so no board sits idle behind a long-lived straggler. A client
+ * whose games ran for {@link #getMaxTicks()} ticks is replaced as well, so a
+ * snake that loops forever cannot hold on to its slot:
+ * <pre>{@code
+ *     SteadyState steadyState = new SteadyState(pool, seed, 100, 3);
+ *     while (running) {
+ *         pool.getSimulation().update(0, pool.getSimulation().getCapacity());
+ *         steadyState.replaceFinished();
+ *     }
+ * }</pre>
+ *
+ * <p>Offspring are mutated copies of their parent ({@link Genome#copy()} and
+ * {@link Genome#mutate()}); there is no crossover or speciation, since
+ * {@code Neat.evolve()} only works on whole generations. Clients are
+ * replaced in index order after every tick, and the parents and board seeds
+ * are drawn from SplitMix64 streams of one seed, so a run only depends on
+ * its seed, not on the number of threads.
+ *
+ * <p>The archive only lives in memory; checkpoints hold the population, not
+ * the archive. Resuming a steady-state run therefore restarts the archive
+ * empty, and games that were in progress start over.
+ */
+public class SteadyState {
+
+    public static final int DEFAULT_ARCHIVE_SIZE = 100;
+    public static final int DEFAULT_TOURNAMENT_SIZE = 3;
+
+    private final BoardPool pool;
+    private final long seed;
+    private final int tournamentSize;
+    private int maxTicks;
+    private int[] ticks = new int[0];
+
+    private final Genome[] archive;
+    private final double[] archiveScores;
+    private int archiveCount;
+
+    private long randomState;
+    private long births;
+    private Genome best;
+    private double bestScore = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Creates a steady-state evolver for the clients bound to the given pool.
+     *
+     * @param pool The pool whose clients are replaced.
+     * @param seed The seed of the parent selection and of the offspring's
+     *             boards.
+     * @param archiveSize The number of best genomes parents are picked from.
+     * @param tournamentSize The number of archived genomes that compete to
+     *                       be a parent. 1 picks uniformly from the archive.
+     */
+    public SteadyState(BoardPool pool, long seed, int archiveSize, int tournamentSize) {
+        if (archiveSize < 1)
+            throw new IllegalArgumentException("Archive needs room for at least 1 genome, got " + archiveSize);
+        if (tournamentSize < 1)
+            throw new IllegalArgumentException("Tournament needs at least 1 genome, got " + tournamentSize);
+
+        this.pool = pool;
+        this.seed = seed;
+        this.tournamentSize = tournamentSize;
+        this.archive = new Genome[archiveSize];
+        this.archiveScores = new double[archiveSize];
+        // Selection uses its own stream, apart from the board seeds
+        this.randomState = Seeds.mix64(seed);
+    }
+
+    /**
+     * Returns the maximum number of ticks a client plays before it is
+     * replaced.
+     *
+     * @return the maximum number of ticks, or 0 if clients play until
+     *         their games are over.
+     */
+    public int getMaxTicks() {
+        return maxTicks;
+    }
+
+    /**
+     * Sets the maximum number of ticks a client plays before it is replaced.
+     * A client that is cut short is scored like one whose games are over,
+     * with the score its snakes have.
+     *
+     * @param maxTicks the maximum number of ticks, or 0 for no limit.
+     */
+    public void setMaxTicks(int maxTicks) {
+        this.maxTicks = maxTicks;
+    }
+
+    /**
+     * Returns the number of offspring born so far.
+     *
+     * @return the number of births.
+     */
+    public long getBirths() {
+        return births;
+    }
+
+    /**
+     * Returns the number of genomes in the archive.
+     *
+     * @return the archive size.
+     */
+    public int getArchiveCount() {
+        return archiveCount;
+    }
+
+    /**
+     * Returns the mean score of the archived genomes.
+     *
+     * @return the mean archive score, or 0 if the archive is empty.
+     */
+    public double getArchiveMeanScore() {
+        double sum = 0.0;
+        for (int i = 0; i < archiveCount; i++) {
+            sum += archiveScores[i];
+        }
+        return archiveCount == 0 ? 0.0 : sum / archiveCount;
+    }
+
+    /**
+     * Returns the best genome evaluated so far. It is never modified, since
+     * offspring are copies.
+     *
+     * @return the best genome, or null before the first client finished.
+     */
+    public @Nullable Genome getBest() {
+        return best;
+    }
+
+    /**
+     * Returns the score of {@link #getBest()}.
+     *
+     * @return the best score so far.
+     */
+    public double getBestScore() {
+        return bestScore;
+    }
+
+    /**
+     * Scores and replaces every client whose games are all over, or that
+     * played {@link #getMaxTicks()} ticks. Call this after every tick.
+     *
+     * @return the number of clients that were replaced.
+     */
+    public int replaceFinished() {
+        if (ticks.length != pool.getClientCount())
+            ticks = new int[pool.getClientCount()];
+
+        int born = 0;
+        for (int i = 0; i < pool.getClientCount(); i++) {
+            ticks[i]++;
+            if (!pool.isFinished(i) && (maxTicks <= 0 || ticks[i] < maxTicks))
+                continue;
+
+            Client client = pool.getClient(i);
+            double score = pool.getScore(i);
+            client.setScore(score);
+            archive(client.getGenome(), score);
+
+            Genome child = select().copy();
+            child.mutate();
+            client.setGenome(child);
+            pool.reset(i, Seeds.split(seed, births++));
+            ticks[i] = 0;
+            born++;
+        }
+        return born;
+    }
+
+    private void archive(Genome genome, double score) {
+        if (score > bestScore) {
+            bestScore = score;
+            best = genome;
+        }
+
+        if (archiveCount < archive.length) {
+            archive[archiveCount] = genome;
+            archiveScores[archiveCount++] = score;
+            return;
+        }
+
+        // Replace the worst archived genome, the oldest one on ties
+        int worst = 0;
+        for (int i = 1; i < archiveCount; i++) {
+            if (archiveScores[i] < archiveScores[worst])
+                worst = i;
+        }
+        if (score > archiveScores[worst]) {
+            archive[worst] = genome;
+            archiveScores[worst] = score;
+        }
+    }
+
+    private Genome select() {
+        int winner = nextIndex();
+        for (int i = 1; i < tournamentSize; i++) {
+            int challenger = nextIndex();
+            if (archiveScores[challenger] > archiveScores[winner])
+                winner = challenger;
+        }
+        return archive[winner];
+    }
+
+    private int nextIndex() {
+        return Seeds.bounded(Seeds.mix64(randomState += Seeds.GOLDEN_GAMMA), archiveCount);
+    }
+}
@@ -0,0 +1,160 @@
+package com.buaisociety.snake;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Updates a range of independent games in parallel. The range is split into
+ * chunks that are run on a {@link ForkJoinPool}, and {@link #tick(int, RangeTask)}
+ * does not return until every chunk has finished, so each call acts as a
+ * barrier. Since boards do not share any state, a parallel tick produces the
+ * exact same result as a serial one.
+ *
+ * <p>When created with 1 thread, no pool is created and every tick runs on the
+ * calling thread. {@link #measureSpeedup(int, RangeTask, int, Runnable)} times
+ * the same ticks both ways to report how much the threads actually help.
+ */
+public class TickExecutor implements AutoCloseable {
+
+    /**
+     * Updates the games in {@code [from, to)}.
+     */
+    @FunctionalInterface
+    public interface RangeTask {
+
+        /**
+         * Updates the games in the given range.
+         *
+         * @param from The first index to update (inclusive).
+         * @param to The last index to update (exclusive).
+         * @return true if any game in the range is still running.
+         */
+        boolean run(int from, int to);
+    }
+
+    // More chunks than threads lets fast workers pick up the slack from slow ones
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final int threads;
+    private final ForkJoinPool pool;
+    private final List<Callable<Boolean>> chunks;
+    private int chunkedCount = -1;
+    private RangeTask currentTask;
+
+    /**
+     * Creates a new executor.
+     *
+     * @param threads The number of worker threads, or 1 to tick serially.
+     */
+    public TickExecutor(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Need at least 1 thread, got " + threads);
+
+        this.threads = threads;
+        this.pool = threads == 1 ? null : new ForkJoinPool(threads);
+        this.chunks = new ArrayList<>();
+    }
+
+    /**
+     * Returns the number of worker threads.
+     *
+     * @return the number of worker threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Runs the task over {@code [0, count)}, blocking until every game has
+     * been updated.
+     *
+     * @param count The number of games.
+     * @param task The task that updates a range of games.
+     * @return true if any game is still running.
+     */
+    public boolean tick(int count, RangeTask task) {
+        if (pool == null)
+            return task.run(0, count);
+
+        if (count != chunkedCount)
+            rebuildChunks(count);
+
+        currentTask = task;
+        boolean anyAlive = false;
+        try {
+            for (Future<Boolean> future : pool.invokeAll(chunks)) {
+                anyAlive |= future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while ticking", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to tick", e.getCause());
+        } finally {
+            currentTask = null;
+        }
+        return anyAlive;
+    }
+
+    private void rebuildChunks(int count) {
+        chunks.clear();
+        int chunkCount = Math.min(count, threads * CHUNKS_PER_THREAD);
+        for (int i = 0; i < chunkCount; i++) {
+            int from = (int) ((long) count * i / chunkCount);
+            int to = (int) ((long) count * (i + 1) / chunkCount);
+            chunks.add(() -> currentTask.run(from, to));
+        }
+        chunkedCount = count;
+    }
+
+    /**
+     * Measures the speedup of this executor over a single thread. The games
+     * are played for up to {@code ticks} ticks on the calling thread, and
+     * then again on this executor, and the wall clock time of the first run
+     * is divided by the time of the second. Both runs play the same games,
+     * so they do the same work. An untimed run on this executor comes first
+     * to warm up the JIT.
+     *
+     * <p>{@code restart} must put every game back where it started. It is
+     * called before every run and once more at the end, and is not timed.
+     *
+     * @param count The number of games.
+     * @param task The task that updates a range of games.
+     * @param ticks The number of ticks to time each way.
+     * @param restart Puts every game back where it started.
+     * @return the serial time divided by the time on this executor.
+     */
+    public double measureSpeedup(int count, RangeTask task, int ticks, Runnable restart) {
+        restart.run();
+        play(count, task, ticks, false);
+
+        restart.run();
+        long serial = play(count, task, ticks, true);
+
+        restart.run();
+        long parallel = play(count, task, ticks, false);
+
+        restart.run();
+        return parallel == 0 ? 1.0 : (double) serial / parallel;
+    }
+
+    private long play(int count, RangeTask task, int ticks, boolean serial) {
+        long start = System.nanoTime();
+        for (int tick = 0; tick < ticks; tick++) {
+            boolean anyAlive = serial ? task.run(0, count) : tick(count, task);
+            if (!anyAlive)
+                break;
+        }
+        return System.nanoTime() - start;
+    }
+
+    @Override
+    public void close() {
+        if (pool != null)
+            pool.shutdown();
+    }
+}
@@ -0,0 +1,671 @@
+package com.buaisociety.snake;
+
+import com.buaisociety.snake.arena.Arena;
+import com.buaisociety.snake.arena.ArenaEvaluator;
+import com.buaisociety.snake.behaviors.NeatBehavior;
+import com.buaisociety.snake.checkpoint.Checkpoint;
+import com.buaisociety.snake.checkpoint.CheckpointWriter;
+import com.buaisociety.snake.distributed.Coordinator;
+import com.buaisociety.snake.metrics.MetricsSummary;
+import com.buaisociety.snake.metrics.PhaseEvent;
+import com.buaisociety.snake.metrics.PhaseEvent.Phase;
+import com.buaisociety.snake.metrics.TickEvent;
+import com.buaisociety.snake.metrics.TrainingMetrics;
+import com.buaisociety.snake.network.CompiledNetwork;
+import com.buaisociety.snake.network.NetworkCompiler;
+import com.buaisociety.snake.replay.Replay;
+import com.buaisociety.snake.replay.ReplayRecorder;
+import com.buaisociety.snake.sensors.RaySensors;
+import com.cjcrafter.neat.Client;
+import com.cjcrafter.neat.Neat;
+import com.cjcrafter.neat.NeatImpl;
+import com.cjcrafter.neat.NeatPrinter;
+import com.cjcrafter.neat.NeatSaver;
+import com.cjcrafter.neat.Parameters;
+import com.cjcrafter.neat.genome.Genome;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Owns the NEAT population and the boards that evaluate it. The trainer has
+ * no dependency on rendering, so it can be driven by the libGDX frame callback
+ * in {@link Main} or by a plain loop in {@link HeadlessTrainer}.
+ *
+ * <p>Boards are seeded from a master seed for the run (see {@link Seeds}).
+ * The seed of every generation is appended to {@code seeds.csv} in the save
+ * folder, so any evaluation can be replayed exactly.
+ *
+ * <p>Checkpoints are written in the background by a {@link CheckpointWriter}:
+ * the population every {@link CheckpointWriter#getEvery()} generations, and
+ * the genome of the best client seen so far whenever it improves. A run can be
+ * continued from its latest {@link Checkpoint} with {@link #resume(File, int)}.
+ * Along with every population checkpoint, the writer thread also saves the
+ * same snapshot in neat4j's own format with a {@link NeatSaver}, so the
+ * training thread only ever serializes the population once. Failing to save
+ * never stops training.
+ *
+ * <p>A generation is run by calling {@link #tick()} until it returns false,
+ * then calling {@link #evolve()}:
+ * <pre>{@code
+ *     Trainer trainer = new Trainer(1000, 8, Seeds.random(), Main.getSaveFolder());
+ *     while (trainer.tick()) {
+ *         // keep ticking until every snake is dead
+ *     }
+ *     trainer.evolve();
+ * }</pre>
+ */
+public class Trainer implements AutoCloseable {
+
+    public static final int BOARD_WIDTH = 24;
+    public static final int BOARD_HEIGHT = 24;
+
+    public static final String SEEDS_FILE = "seeds.csv";
+    public static final String CHECKPOINT_FILE = "population.ckpt";
+    public static final String BEST_GENOME_FILE = "best-genome.ser";
+    public static final String REPLAYS_FILE = "replays.bin";
+    public static final String METRICS_FILE = "metrics.csv";
+
+    private final long seed;
+    private final Path seedsFile;
+    private final RaySensors sensors;
+    private final NetworkCompiler compiler;
+    private final Neat neat;
+    private final NeatPrinter printer;
+    private final CheckpointWriter checkpoints;
+    private final BoardPool pool;
+    private final Path saveFolder;
+    private ReplayRecorder replays;
+    private TrainingMetrics metrics;
+    private boolean evaluatedElsewhere;
+    private SteadyState steadyState;
+    private int births;
+    private int generation;
+    private double bestScore;
+    private boolean compressCheckpoints = true;
+    private final TickExecutor executor;
+    private final TickExecutor.RangeTask tickTask = this::tick;
+
+    /**
+     * Creates a new trainer with a fresh population.
+     *
+     * @param totalGames The number of clients (and boards) in the population.
+     * @param threads The number of threads used to update boards, or 1 to
+     *                update them on the calling thread.
+     * @param seed The master seed of the run.
+     * @param saveFolder The folder that checkpoints are saved to.
+     */
+    public Trainer(int totalGames, int threads, long seed, @NotNull File saveFolder) {
+        this(createNeat(totalGames, RaySensors.all()), 0, Double.NEGATIVE_INFINITY, threads, seed, saveFolder);
+    }
+
+    private Trainer(Neat neat, int generation, double bestScore, int threads, long seed, File saveFolder) {
+        this.seed = seed;
+        this.saveFolder = saveFolder.toPath();
+        this.seedsFile = this.saveFolder.resolve(SEEDS_FILE);
+        this.executor = new TickExecutor(threads);
+        this.sensors = RaySensors.all();
+        this.neat = neat;
+        this.generation = generation;
+        this.bestScore = bestScore;
+        this.printer = new NeatPrinter(neat);
+        this.checkpoints = new CheckpointWriter(saveFolder.toPath(), 1);
+        this.compiler = new NetworkCompiler(sensors.getInputCount(), NeatBehavior.OUTPUTS);
+        this.pool = new BoardPool(BOARD_WIDTH, BOARD_HEIGHT, sensors, compiler);
+        this.pool.setStarvationBudget(StarvationBudget.DEFAULT);
+        startGeneration();
+    }
+
+    private static Neat createNeat(int totalGames, RaySensors sensors) {
+        Parameters parameters = new Parameters();
+        return new NeatImpl(sensors.getInputCount(), NeatBehavior.OUTPUTS, totalGames, parameters);
+    }
+
+    /**
+     * Continues a run from the latest checkpoint in its save folder. The
+     * population, generation, best score, run seed, evaluation mode and
+     * starvation budget are restored, so the next generation is evaluated
+     * exactly as it would have been. New checkpoints keep being written to
+     * the same folder.
+     *
+     * @param saveFolder The save folder of the run.
+     * @param threads The number of threads used to update boards.
+     * @return the resumed trainer.
+     * @throws IOException if the checkpoint cannot be read.
+     */
+    public static Trainer resume(@NotNull File saveFolder, int threads) throws IOException {
+        Checkpoint checkpoint = Checkpoint.read(saveFolder.toPath().resolve(CHECKPOINT_FILE));
+        Trainer trainer = new Trainer(checkpoint.getNeat(), checkpoint.getGeneration(), checkpoint.getBestScore(),
+            threads, checkpoint.getRunSeed(), saveFolder);
+        trainer.setEvaluation(checkpoint.getEvaluation());
+        trainer.setStarvationBudget(checkpoint.getStarvationBudget());
+        trainer.restartGeneration();
+        return trainer;
+    }
+
+    /**
+     * Returns the NEAT population being trained.
+     *
+     * @return the NEAT population being trained.
+     */
+    public Neat getNeat() {
+        return neat;
+    }
+
+    /**
+     * Returns the writer that saves checkpoints in the background. Use it to
+     * change how often the population is saved.
+     *
+     * @return the checkpoint writer.
+     */
+    public CheckpointWriter getCheckpoints() {
+        return checkpoints;
+    }
+
+    /**
+     * Returns whether population checkpoints are compressed.
+     *
+     * @return whether checkpoints are compressed.
+     */
+    public boolean isCompressCheckpoints() {
+        return compressCheckpoints;
+    }
+
+    /**
+     * Sets whether population checkpoints are compressed. Compressed
+     * checkpoints are much smaller, and are compressed on the writer thread.
+     *
+     * @param compressCheckpoints whether to compress checkpoints.
+     */
+    public void setCompressCheckpoints(boolean compressCheckpoints) {
+        this.compressCheckpoints = compressCheckpoints;
+    }
+
+    /**
+     * Returns whether the best and worst game of every generation is
+     * recorded.
+     *
+     * @return whether replays are recorded.
+     */
+    public boolean isRecordingReplays() {
+        return replays != null;
+    }
+
+    /**
+     * Sets whether the best and worst game of every generation is appended
+     * to {@code replays.bin} in the save folder (see {@link Replay}). Every
+     * game's moves are recorded, which costs 2 bits per move. Takes effect
+     * from the next generation on, or after {@link #restartGeneration()}.
+     * Like a failed checkpoint, a failed write is printed and training goes
+     * on.
+     *
+     * @param recordReplays whether to record replays.
+     */
+    public void setRecordReplays(boolean recordReplays) {
+        this.replays = recordReplays ? new ReplayRecorder(saveFolder.resolve(REPLAYS_FILE)) : null;
+        pool.setRecording(recordReplays);
+    }
+
+    /**
+     * Returns the collector of the periodic metrics summary.
+     *
+     * @return the metrics, or null if they are disabled.
+     */
+    public @Nullable TrainingMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets how often a {@link MetricsSummary} of the tick rate, generation
+     * rate, allocation rate and 99th percentile tick latency is printed and
+     * appended to {@code metrics.csv} in the save folder.
+     *
+     * @param seconds The length of a reporting window, or 0 to disable the
+     *                summary.
+     */
+    public void setMetricsInterval(double seconds) {
+        this.metrics = seconds > 0.0 ? new TrainingMetrics(saveFolder.resolve(METRICS_FILE), seconds) : null;
+    }
+
+    /**
+     * Returns the best score any client reached so far.
+     *
+     * @return the best score so far.
+     */
+    public double getBestScore() {
+        return bestScore;
+    }
+
+    /**
+     * Returns the compiler that flattens the clients' networks every
+     * generation.
+     *
+     * @return the network compiler.
+     */
+    public NetworkCompiler getCompiler() {
+        return compiler;
+    }
+
+    /**
+     * Returns how many steps snakes may take without eating.
+     *
+     * @return the starvation budget.
+     */
+    public StarvationBudget getStarvationBudget() {
+        return pool.getStarvationBudget();
+    }
+
+    /**
+     * Sets how many steps snakes may take without eating. Defaults to
+     * {@link StarvationBudget#DEFAULT}. The games of the current generation
+     * switch to the new budget right away.
+     *
+     * @param starvationBudget the new starvation budget.
+     */
+    public void setStarvationBudget(StarvationBudget starvationBudget) {
+        pool.setStarvationBudget(starvationBudget);
+    }
+
+    /**
+     * Returns how clients are scored.
+     *
+     * @return the evaluation mode.
+     */
+    public Evaluation getEvaluation() {
+        return pool.getEvaluation();
+    }
+
+    /**
+     * Sets how clients are scored. Defaults to {@link Evaluation#SINGLE}. The
+     * evaluation is used from the next generation on; call this right after
+     * construction and then {@link #restartGeneration()} to use it for the
+     * first generation too.
+     *
+     * @param evaluation the new evaluation mode.
+     */
+    public void setEvaluation(Evaluation evaluation) {
+        pool.setEvaluation(evaluation);
+    }
+
+    /**
+     * Returns the master seed of the run.
+     *
+     * @return the master seed of the run.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the number of the generation being evaluated, starting at 0.
+     *
+     * @return the number of the current generation.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Returns the seed of the generation being evaluated. Board {@code i} is
+     * seeded with {@code Seeds.split(getGenerationSeed(), i)}.
+     *
+     * @return the seed of the current generation.
+     */
+    public long getGenerationSeed() {
+        return Seeds.split(seed, generation);
+    }
+
+    /**
+     * Returns the boards of the current generation. Every client plays one
+     * board per episode (see {@link Evaluation}), and the boards of a client
+     * are next to each other.
+     *
+     * @return the boards of the current generation.
+     */
+    public List<Board> getGames() {
+        return pool.getBoards();
+    }
+
+    /**
+     * Returns the executor used to update boards.
+     *
+     * @return the executor used to update boards.
+     */
+    public TickExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Updates every board that still has a living snake. Clients are split
+     * between the executor's threads, and this method returns once all of
+     * their boards have been updated. Every episode of a client is updated on
+     * the same thread, so clients whose networks could not be compiled are
+     * never evaluated concurrently.
+     *
+     * @return true if any snake was alive at the start of this tick.
+     */
+    public boolean tick() {
+        TickEvent event = new TickEvent();
+        event.begin();
+        long start = metrics != null ? System.nanoTime() : 0L;
+
+        boolean anyAlive = executor.tick(pool.getClientCount(), tickTask);
+
+        if (metrics != null) {
+            metrics.recordTick(System.nanoTime() - start);
+            MetricsSummary summary = metrics.poll(generation);
+            if (summary != null)
+                System.out.println(summary);
+        }
+
+        event.end();
+
+        // Counting the living snakes walks every board, so only do it when recording
+        if (event.shouldCommit()) {
+            event.generation = generation;
+            event.alive = pool.getAliveCount();
+            event.commit();
+        }
+        return anyAlive;
+    }
+
+    /**
+     * Measures how much faster the executor's threads tick the boards of
+     * the current generation than a single thread does, see
+     * {@link TickExecutor#measureSpeedup(int, TickExecutor.RangeTask, int, Runnable)}.
+     * The generation is restarted afterwards, so it is evaluated as if this
+     * was never called.
+     *
+     * @param ticks The number of ticks to time each way.
+     * @return the measured speedup.
+     */
+    public double measureSpeedup(int ticks) {
+        return executor.measureSpeedup(pool.getClientCount(), tickTask, ticks, this::restartGeneration);
+    }
+
+    private boolean tick(int from, int to) {
+        int episodes = pool.getEpisodes();
+        return pool.getSimulation().update(from * episodes, to * episodes);
+    }
+
+    /**
+     * Returns the steady-state evolver, see {@link #tickSteadyState()}.
+     *
+     * @return the steady-state evolver, or null in generational mode.
+     */
+    public @Nullable SteadyState getSteadyState() {
+        return steadyState;
+    }
+
+    /**
+     * Switches to steady-state evolution (see {@link SteadyState}), starting
+     * from the boards of the current generation. Use
+     * {@link #tickSteadyState()} instead of {@link #tick()} and
+     * {@link #evolve()} afterwards. The archive starts empty, also after
+     * {@link #resume(File, int)}, since checkpoints do not hold it.
+     *
+     * @param archiveSize The number of best genomes parents are picked from.
+     * @param tournamentSize The number of archived genomes that compete to
+     *                       be a parent.
+     */
+    public void enableSteadyState(int archiveSize, int tournamentSize) {
+        steadyState = new SteadyState(pool, Seeds.mix64(getGenerationSeed()), archiveSize, tournamentSize);
+        births = 0;
+    }
+
+    /**
+     * Updates every board like {@link #tick()}, then replaces every client
+     * whose games are over with an offspring. There is no generation
+     * barrier; instead, every time as many offspring were born as there are
+     * clients, the generation number advances and a checkpoint is saved if
+     * one is due, like after {@link #evolve()}.
+     *
+     * @return the number of offspring born this tick.
+     */
+    public int tickSteadyState() {
+        if (steadyState == null)
+            throw new IllegalStateException("Steady-state evolution is not enabled");
+
+        tick();
+        int born = steadyState.replaceFinished();
+
+        // The best genome is archived, so it is never modified afterwards
+        if (steadyState.getBestScore() > bestScore) {
+            bestScore = steadyState.getBestScore();
+            submitBest(steadyState.getBest());
+        }
+
+        births += born;
+        if (births >= pool.getClientCount()) {
+            births -= pool.getClientCount();
+            reportRejection();
+            generation++;
+            if (checkpoints.isDue(generation)) {
+                PhaseEvent event = PhaseEvent.start(Phase.CHECKPOINT, generation);
+                saveCheckpoint();
+                event.commit();
+            }
+            if (metrics != null)
+                metrics.recordGeneration();
+        }
+        return born;
+    }
+
+    /**
+     * Evaluates the current generation on the workers of the given
+     * coordinator instead of ticking the local boards, and sets the score of
+     * every client. Call {@link #evolve()} afterwards as usual. The workers
+     * play the exact same games the local boards would.
+     *
+     * @param coordinator The coordinator of the workers.
+     */
+    public void evaluate(Coordinator coordinator) {
+        List<Client> clients = neat.getClients();
+        CompiledNetwork[] networks = new CompiledNetwork[clients.size()];
+        for (int i = 0; i < networks.length; i++) {
+            networks[i] = pool.getNetwork(i);
+        }
+        coordinator.evaluate(clients, networks, getGenerationSeed(), pool.getEvaluation(), pool.getStarvationBudget());
+        evaluatedElsewhere = true;
+    }
+
+    /**
+     * Evaluates the current generation in multi-snake arenas instead of
+     * ticking the local boards, and sets the score of every client. Call
+     * {@link #evolve()} afterwards as usual.
+     *
+     * @param arenas The arena evaluator, usually created by
+     *               {@link #createArenaEvaluator(int, int, int, int)}.
+     */
+    public void evaluate(ArenaEvaluator arenas) {
+        arenas.evaluate(neat.getClients(), getGenerationSeed());
+        reportRejection();
+        evaluatedElsewhere = true;
+    }
+
+    /**
+     * Creates an evaluator that plays the clients against each other in
+     * arenas (see {@link Arena}), using this trainer's sensors, network
+     * compiler, threads and starvation budget.
+     *
+     * @param width The width of every arena.
+     * @param height The height of every arena.
+     * @param snakesPerArena The number of clients that play in the same arena.
+     * @param foodCount The number of food items on every arena.
+     * @return the arena evaluator.
+     */
+    public ArenaEvaluator createArenaEvaluator(int width, int height, int snakesPerArena, int foodCount) {
+        ArenaEvaluator arenas = new ArenaEvaluator(width, height, snakesPerArena, foodCount, sensors, compiler, executor);
+        arenas.setStarvationBudget(pool.getStarvationBudget());
+        return arenas;
+    }
+
+    /**
+     * Scores the clients, evolves the population, queues a checkpoint if one
+     * is due, and resets the pooled boards for the clients of the next
+     * generation. Every phase is timed by a {@link PhaseEvent}.
+     */
+    public void evolve() {
+        // Remote or arena scores are already set, the local boards never ran
+        PhaseEvent event = PhaseEvent.start(Phase.SCORE, generation);
+        if (!evaluatedElsewhere)
+            pool.writeScores();
+        event.commit();
+
+        event = PhaseEvent.start(Phase.SAVE, generation);
+        saveBest();
+        saveReplays();
+        event.commit();
+
+        event = PhaseEvent.start(Phase.EVOLVE, generation);
+        neat.evolve();
+        event.commit();
+
+        event = PhaseEvent.start(Phase.RENDER, generation);
+        System.out.println(printer.render());
+        event.commit();
+
+        // Reuse the boards for the next generation
+        generation++;
+        if (checkpoints.isDue(generation)) {
+            event = PhaseEvent.start(Phase.CHECKPOINT, generation);
+            saveCheckpoint();
+            event.commit();
+        }
+
+        event = PhaseEvent.start(Phase.REBIND, generation);
+        startGeneration();
+        event.commit();
+
+        if (metrics != null)
+            metrics.recordGeneration();
+    }
+
+    private void saveCheckpoint() {
+        // Serialize now, since the population keeps changing. The writer
+        // thread does the compression and the NeatSaver output.
+        byte[] population = checkpoints.snapshot(CHECKPOINT_FILE, neat);
+        if (population == null)
+            return;
+
+        Checkpoint checkpoint = new Checkpoint(generation, seed, bestScore, pool.getEvaluation(),
+            pool.getStarvationBudget(), population);
+        boolean compress = compressCheckpoints;
+        File folder = saveFolder.toFile();
+        checkpoints.submit(CHECKPOINT_FILE, () -> {
+            saveNeat(checkpoint, folder);
+            return checkpoint.toBytes(compress);
+        });
+    }
+
+    /**
+     * Saves a copy of the checkpoint's population with a {@link NeatSaver}.
+     * Runs on the writer thread, so it reads the snapshot instead of the
+     * live population.
+     */
+    private static void saveNeat(Checkpoint checkpoint, File folder) {
+        try {
+            new NeatSaver(checkpoint.getNeat(), folder).save();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Failed to save the population with NeatSaver: " + e);
+        }
+    }
+
+    private void submitBest(Genome genome) {
+        byte[] bytes = checkpoints.snapshot(BEST_GENOME_FILE, genome);
+        if (bytes != null)
+            checkpoints.submit(BEST_GENOME_FILE, bytes);
+    }
+
+    private void saveReplays() {
+        if (replays == null || evaluatedElsewhere || !pool.getSimulation().isRecording())
+            return;
+
+        Evaluation evaluation = pool.getEvaluation();
+        int best = pool.findBoard(true);
+        int worst = pool.findBoard(false);
+        if (best < 0)
+            return;
+
+        try {
+            replays.append(replay(best, Replay.Kind.BEST, evaluation), replay(worst, Replay.Kind.WORST, evaluation));
+        } catch (IOException e) {
+            System.err.println("Failed to write " + replays.getFile() + ": " + e);
+        }
+    }
+
+    private Replay replay(int index, Replay.Kind kind, Evaluation evaluation) {
+        Board board = pool.getBoards().get(index);
+        int episodes = pool.getEpisodes();
+        return Replay.of(board, kind, generation, index / episodes, index % episodes, evaluation.getScore(board));
+    }
+
+    private void saveBest() {
+        Client best = null;
+        for (Client client : neat.getClients()) {
+            if (best == null || client.getScore() > best.getScore())
+                best = client;
+        }
+
+        // Snapshot the genome now, evolving changes it in place
+        if (best != null && best.getScore() > bestScore) {
+            bestScore = best.getScore();
+            submitBest(best.getGenome());
+        }
+    }
+
+    /**
+     * Resets every board of the current generation, so it is evaluated again
+     * from the start with the current settings, e.g. after
+     * {@link #setEvaluation(Evaluation)}.
+     */
+    public void restartGeneration() {
+        pool.bind(neat.getClients(), getGenerationSeed());
+        reportRejection();
+    }
+
+    /**
+     * Prints why a client could not be compiled, if one could not since the
+     * last report. The client is still evaluated, just more slowly.
+     */
+    private void reportRejection() {
+        String rejection = compiler.pollRejection();
+        if (rejection != null)
+            System.err.println("Generation " + generation + ": evaluating a client directly, " + rejection);
+    }
+
+    private void startGeneration() {
+        evaluatedElsewhere = false;
+        long generationSeed = getGenerationSeed();
+        pool.bind(neat.getClients(), generationSeed);
+        reportRejection();
+
+        try {
+            if (Files.notExists(seedsFile))
+                Files.writeString(seedsFile, "generation,run_seed,generation_seed\n", StandardCharsets.UTF_8);
+
+            String row = generation + "," + seed + "," + generationSeed + "\n";
+            Files.writeString(seedsFile, row, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write " + seedsFile, e);
+        }
+    }
+
+    /**
+     * Shuts down the worker threads, after the pending checkpoints are
+     * written.
+     */
+    @Override
+    public void close() {
+        executor.close();
+        checkpoints.close();
+    }
+}
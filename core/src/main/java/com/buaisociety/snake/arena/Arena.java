@@ -0,0 +1,699 @@
+package com.buaisociety.snake.arena;
+
+import com.buaisociety.snake.Board;
+import com.buaisociety.snake.DeathCause;
+import com.buaisociety.snake.Direction;
+import com.buaisociety.snake.NeighborTable;
+import com.buaisociety.snake.Seeds;
+import com.buaisociety.snake.StarvationBudget;
+import com.buaisociety.snake.TickExecutor;
+
+import java.util.Arrays;
+
+/**
+ * One large board shared by many snakes and several pieces of food. Like
+ * {@link com.buaisociety.snake.Simulation}, the state is stored in flat
+ * primitive arrays: one slot per snake for its head, tail, length and
+ * direction, and one shared grid with the owner of every cell. Bodies are
+ * linked lists threaded through the grid (every segment points to the
+ * segment closer to the head), so moving a snake and checking whether a cell
+ * is taken are both O(1), no matter how many snakes there are:
+ * <pre>{@code
+ *     Arena arena = new Arena(96, 96, 200, executor);
+ *     arena.setFoodCount(50);
+ *     arena.reset(controllers, 0, 200, seed);
+ *     while (arena.tick()) {
+ *         // keep ticking until every snake is dead
+ *     }
+ * }</pre>
+ *
+ * <p>Every tick has three phases, and every snake moves at the same time:
+ * <ol>
+ *     <li>Every living snake asks its {@link ArenaController} where to go,
+ *         and picks the cell its head moves to. Snakes that went too long
+ *         without eating starve instead.</li>
+ *     <li>Moves are resolved. A snake whose head moves into a cell that is
+ *         taken at the start of the tick (including tails that would move
+ *         out of the way, like on a single board) dies. When several snakes
+ *         move into the same free cell, the longest one gets it and the
+ *         others die; if the longest ones are equally long, they all die.
+ *         The outcome does not depend on the order snakes are visited in.</li>
+ *     <li>Survivors move and eat, and dead snakes are removed from the grid.
+ *         Eaten food is placed again on random free cells.</li>
+ * </ol>
+ *
+ * <p>The first and last phase only touch the cells of one snake, so they are
+ * split by snake between the threads of a {@link TickExecutor}. Moves are
+ * resolved by region, which are horizontal bands of rows: every snake is
+ * assigned to the region of the cell it moves to, so two snakes that could
+ * collide are always resolved by the same thread. Food is placed from a
+ * SplitMix64 stream seeded by {@link #reset(ArenaController[], int, int, long)}
+ * after the parallel phases, so an arena's result only depends on its seed
+ * and controllers, not on the number of threads.
+ */
+public class Arena {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final DeathCause[] DEATH_CAUSES = DeathCause.values();
+
+    // The number of random cells tried before food is placed by a scan
+    private static final int FOOD_PROBES = 32;
+    private static final int TIE = -2;
+
+    private final int width;
+    private final int height;
+    private final int area;
+    private final int capacity;
+    private final NeighborTable neighbors;
+    private final TickExecutor executor;
+    private final int regionRows;
+    private final int regions;
+    private StarvationBudget starvationBudget;
+
+    // The shared grid
+    private final int[] owners;
+    private final int[] towardHead;
+    private final boolean[] food;
+    private final int[] claims;
+    private final int[] claimLengths;
+    private int placedFood;
+    private int foodTarget;
+
+    // One slot per snake
+    private final ArenaController[] controllers;
+    private final int[] heads;
+    private final int[] tails;
+    private final int[] lengths;
+    private final int[] maxLengths;
+    private final byte[] directions;
+    private final boolean[] alive;
+    private final byte[] deathCauses;
+    private final int[] stepsSinceFood;
+    private final int[] stepLimits;
+    private final int[] targets;
+    private final boolean[] ate;
+
+    // Snakes sorted by the region of their target, see bucketTargets()
+    private final int[] regionStarts;
+    private final int[] regionCursors;
+    private final int[] regionSnakes;
+
+    private int snakeCount;
+    private int aliveCount;
+    private int ticks;
+    private long randomState;
+
+    private final TickExecutor.RangeTask decideTask = this::decide;
+    private final TickExecutor.RangeTask resolveTask = this::resolve;
+    private final TickExecutor.RangeTask applyTask = this::apply;
+
+    /**
+     * Creates an empty arena. Use
+     * {@link #reset(ArenaController[], int, int, long)} to start a game.
+     *
+     * @param width The width of the arena.
+     * @param height The height of the arena.
+     * @param capacity The maximum number of snakes.
+     * @param executor Runs the phases of every tick, see {@link #tick()}.
+     */
+    public Arena(int width, int height, int capacity, TickExecutor executor) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Need room for at least 1 snake, got " + capacity);
+        if (capacity > width * height)
+            throw new IllegalArgumentException(capacity + " snakes do not fit in a " + width + "x" + height + " arena");
+
+        this.width = width;
+        this.height = height;
+        this.area = width * height;
+        this.capacity = capacity;
+        this.neighbors = NeighborTable.of(width, height);
+        this.executor = executor;
+        this.starvationBudget = StarvationBudget.UNLIMITED;
+
+        // One region per chunk of the executor, but at least 1 row per region
+        int wanted = Math.min(height, executor.getThreads() * 4);
+        this.regionRows = (height + wanted - 1) / wanted;
+        this.regions = (height + regionRows - 1) / regionRows;
+
+        this.owners = new int[area];
+        this.towardHead = new int[area];
+        this.food = new boolean[area];
+        this.claims = new int[area];
+        this.claimLengths = new int[area];
+        Arrays.fill(owners, -1);
+        Arrays.fill(claims, -1);
+
+        this.controllers = new ArenaController[capacity];
+        this.heads = new int[capacity];
+        this.tails = new int[capacity];
+        this.lengths = new int[capacity];
+        this.maxLengths = new int[capacity];
+        this.directions = new byte[capacity];
+        this.alive = new boolean[capacity];
+        this.deathCauses = new byte[capacity];
+        this.stepsSinceFood = new int[capacity];
+        this.stepLimits = new int[capacity];
+        this.targets = new int[capacity];
+        this.ate = new boolean[capacity];
+
+        this.regionStarts = new int[regions + 1];
+        this.regionCursors = new int[regions];
+        this.regionSnakes = new int[capacity];
+    }
+
+    /**
+     * Returns the width of the arena.
+     *
+     * @return the width of the arena.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the arena.
+     *
+     * @return the height of the arena.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the neighbor lookup table of the arena.
+     *
+     * @return the neighbor lookup table.
+     */
+    public NeighborTable getNeighbors() {
+        return neighbors;
+    }
+
+    /**
+     * Returns the maximum number of snakes.
+     *
+     * @return the maximum number of snakes.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of regions moves are resolved in.
+     *
+     * @return the number of regions.
+     */
+    public int getRegionCount() {
+        return regions;
+    }
+
+    /**
+     * Returns how many steps snakes may take without eating.
+     *
+     * @return the starvation budget.
+     */
+    public StarvationBudget getStarvationBudget() {
+        return starvationBudget;
+    }
+
+    /**
+     * Sets how many steps snakes may take without eating. The default is
+     * {@link StarvationBudget#UNLIMITED}. Snakes pick up the new budget the
+     * next time they eat or are reset.
+     *
+     * @param starvationBudget the new starvation budget.
+     */
+    public void setStarvationBudget(StarvationBudget starvationBudget) {
+        this.starvationBudget = starvationBudget;
+    }
+
+    /**
+     * Returns the number of food items kept on the arena.
+     *
+     * @return the number of food items.
+     */
+    public int getFoodCount() {
+        return foodTarget;
+    }
+
+    /**
+     * Sets the number of food items kept on the arena. Eaten food is placed
+     * again right away, as long as there are free cells. Takes effect on the
+     * next {@link #reset(ArenaController[], int, int, long)}.
+     *
+     * @param foodCount the number of food items, at least 1.
+     */
+    public void setFoodCount(int foodCount) {
+        if (foodCount < 1)
+            throw new IllegalArgumentException("Need at least 1 food, got " + foodCount);
+
+        this.foodTarget = foodCount;
+    }
+
+    /**
+     * Clears the arena and starts a new game with one snake per controller
+     * in {@code controllers[offset, offset + count)}. Snake {@code i} is
+     * controlled by {@code controllers[offset + i]}. Every snake starts as a
+     * single segment on a random free cell, facing a random direction, and
+     * grows to {@link Board#STARTING_LENGTH} over its first moves.
+     *
+     * @param controllers The controllers of the snakes.
+     * @param offset The index of the first snake's controller.
+     * @param count The number of snakes, at most {@link #getCapacity()}.
+     * @param seed The seed of the snake and food placement.
+     */
+    public void reset(ArenaController[] controllers, int offset, int count, long seed) {
+        if (count > capacity)
+            throw new IllegalArgumentException("Arena has room for " + capacity + " snakes, got " + count);
+        if (foodTarget < 1)
+            throw new IllegalStateException("Set the food count before starting a game");
+
+        Arrays.fill(owners, -1);
+        Arrays.fill(food, false);
+        randomState = seed;
+        snakeCount = count;
+        aliveCount = count;
+        placedFood = 0;
+        ticks = 0;
+
+        for (int snake = 0; snake < count; snake++) {
+            int cell = randomFreeCell();
+            owners[cell] = snake;
+            this.controllers[snake] = controllers[offset + snake];
+            heads[snake] = cell;
+            tails[snake] = cell;
+            lengths[snake] = 1;
+            maxLengths[snake] = Board.STARTING_LENGTH;
+            directions[snake] = (byte) nextInt(DIRECTIONS.length);
+            alive[snake] = true;
+            deathCauses[snake] = (byte) DeathCause.NONE.ordinal();
+            stepsSinceFood[snake] = 0;
+            stepLimits[snake] = starvationBudget.getSteps(Board.STARTING_LENGTH, area);
+            ate[snake] = false;
+        }
+        Arrays.fill(this.controllers, count, capacity, null);
+        placeFood();
+    }
+
+    /**
+     * Moves a snake of the current game onto the given cells, replacing the
+     * body {@link #reset(ArenaController[], int, int, long)} gave it, so tests
+     * can set up a collision. Food on those cells is removed, and is placed
+     * again after the next tick.
+     *
+     * @param snake The index of the snake.
+     * @param direction The direction the snake is moving in.
+     * @param body The cells of the body, head first. They must be free and
+     *             each one must be next to the one before it.
+     */
+    void place(int snake, Direction direction, int... body) {
+        removeBody(snake);
+        for (int i = 0; i < body.length; i++) {
+            int cell = body[i];
+            if (owners[cell] >= 0)
+                throw new IllegalArgumentException("Cell " + cell + " is taken by snake " + owners[cell]);
+            if (food[cell]) {
+                food[cell] = false;
+                placedFood--;
+            }
+            owners[cell] = snake;
+            if (i > 0)
+                towardHead[cell] = body[i - 1];
+        }
+        heads[snake] = body[0];
+        tails[snake] = body[body.length - 1];
+        lengths[snake] = body.length;
+        maxLengths[snake] = Math.max(body.length, Board.STARTING_LENGTH);
+        directions[snake] = (byte) direction.ordinal();
+    }
+
+    /**
+     * Moves every living snake once, see the class documentation.
+     *
+     * @return true if any snake is still alive after the tick.
+     */
+    public boolean tick() {
+        if (aliveCount == 0)
+            return false;
+
+        executor.tick(regions, decideTask);
+        bucketTargets();
+        executor.tick(regions, resolveTask);
+        executor.tick(regions, applyTask);
+
+        // Count the survivors and the food they ate
+        int living = 0;
+        for (int snake = 0; snake < snakeCount; snake++) {
+            if (alive[snake])
+                living++;
+            if (ate[snake]) {
+                ate[snake] = false;
+                placedFood--;
+            }
+        }
+        aliveCount = living;
+        ticks++;
+        placeFood();
+        return living > 0;
+    }
+
+    /**
+     * Phase 1: picks the target cell of every living snake in the snake range
+     * of the given regions.
+     */
+    private boolean decide(int from, int to) {
+        int end = snakeBoundary(to);
+        for (int snake = snakeBoundary(from); snake < end; snake++) {
+            if (!alive[snake])
+                continue;
+
+            if (stepsSinceFood[snake] >= stepLimits[snake]) {
+                kill(snake, DeathCause.STARVATION);
+                continue;
+            }
+
+            Direction current = DIRECTIONS[directions[snake]];
+            Direction desired = controllers[snake].getDirection(this, snake);
+            if (desired != current.opposite()) {
+                current = desired;
+                directions[snake] = (byte) desired.ordinal();
+            }
+            targets[snake] = neighbors.next(heads[snake], current);
+        }
+        return true;
+    }
+
+    /**
+     * Sorts the living snakes by the region of their target (a counting
+     * sort), so every region can be resolved on its own.
+     */
+    private void bucketTargets() {
+        Arrays.fill(regionStarts, 0);
+        for (int snake = 0; snake < snakeCount; snake++) {
+            if (alive[snake])
+                regionStarts[region(targets[snake]) + 1]++;
+        }
+        for (int region = 0; region < regions; region++) {
+            regionStarts[region + 1] += regionStarts[region];
+        }
+
+        System.arraycopy(regionStarts, 0, regionCursors, 0, regions);
+        for (int snake = 0; snake < snakeCount; snake++) {
+            if (alive[snake])
+                regionSnakes[regionCursors[region(targets[snake])]++] = snake;
+        }
+    }
+
+    /**
+     * Phase 2: resolves the moves of every snake whose target is in the
+     * given regions.
+     */
+    private boolean resolve(int from, int to) {
+        int first = regionStarts[from];
+        int last = regionStarts[to];
+
+        // Moving into any taken cell is a collision. Otherwise, the longest
+        // snake claims the cell, and a tie for the longest blocks it.
+        for (int i = first; i < last; i++) {
+            int snake = regionSnakes[i];
+            int target = targets[snake];
+            if (owners[target] >= 0) {
+                kill(snake, DeathCause.COLLISION);
+                continue;
+            }
+
+            int length = lengths[snake];
+            int claim = claims[target];
+            if (claim == -1 || length > claimLengths[target]) {
+                claims[target] = snake;
+                claimLengths[target] = length;
+            } else if (length == claimLengths[target]) {
+                claims[target] = TIE;
+            }
+        }
+
+        // Snakes that lost their claim ran head-on into another snake
+        for (int i = first; i < last; i++) {
+            int snake = regionSnakes[i];
+            if (!alive[snake])
+                continue;
+
+            if (claims[targets[snake]] != snake)
+                kill(snake, DeathCause.COLLISION);
+        }
+        for (int i = first; i < last; i++) {
+            claims[targets[regionSnakes[i]]] = -1;
+        }
+        return true;
+    }
+
+    /**
+     * Phase 3: moves the survivors and removes the snakes that died this
+     * tick, in the snake range of the given regions.
+     */
+    private boolean apply(int from, int to) {
+        boolean anyAlive = false;
+        int end = snakeBoundary(to);
+        for (int snake = snakeBoundary(from); snake < end; snake++) {
+            if (!alive[snake]) {
+                if (lengths[snake] > 0)
+                    removeBody(snake);
+                continue;
+            }
+
+            anyAlive = true;
+            int target = targets[snake];
+            if (food[target]) {
+                food[target] = false;
+                ate[snake] = true;
+                maxLengths[snake]++;
+                stepsSinceFood[snake] = 0;
+                stepLimits[snake] = starvationBudget.getSteps(maxLengths[snake], area);
+            } else {
+                stepsSinceFood[snake]++;
+            }
+            push(snake, target);
+        }
+        return anyAlive;
+    }
+
+    /**
+     * Adds a new head to the given snake, dropping the tail if the snake grew
+     * past its max length. Only touches cells the snake owns or claimed.
+     */
+    private void push(int snake, int cell) {
+        towardHead[heads[snake]] = cell;
+        owners[cell] = snake;
+        heads[snake] = cell;
+
+        int length = lengths[snake] + 1;
+        if (length > maxLengths[snake]) {
+            int tail = tails[snake];
+            tails[snake] = towardHead[tail];
+            owners[tail] = -1;
+            length--;
+        }
+        lengths[snake] = length;
+    }
+
+    private void removeBody(int snake) {
+        int cell = tails[snake];
+        for (int i = lengths[snake]; i > 1; i--) {
+            owners[cell] = -1;
+            cell = towardHead[cell];
+        }
+        owners[cell] = -1;
+        lengths[snake] = 0;
+    }
+
+    private void kill(int snake, DeathCause cause) {
+        alive[snake] = false;
+        deathCauses[snake] = (byte) cause.ordinal();
+    }
+
+    /**
+     * Returns the first snake handled by the chunk that starts at the given
+     * region. The snake phases use the same range count as the region phase,
+     * so the executor reuses its chunks for every phase.
+     */
+    private int snakeBoundary(int region) {
+        return (int) ((long) snakeCount * region / regions);
+    }
+
+    private int region(int cell) {
+        return neighbors.getY(cell) / regionRows;
+    }
+
+    /**
+     * Places food on random free cells until there are
+     * {@link #getFoodCount()} pieces, or no free cell is left.
+     */
+    private void placeFood() {
+        while (placedFood < foodTarget) {
+            int cell = randomFreeCell();
+            if (cell < 0)
+                return;
+
+            food[cell] = true;
+            placedFood++;
+        }
+    }
+
+    /**
+     * Returns a random cell that has neither a snake nor food on it, or -1
+     * if there is none. A few random cells are tried first, which almost
+     * always succeeds on a sparse arena; after that, the arena is scanned
+     * from a random cell.
+     */
+    private int randomFreeCell() {
+        for (int i = 0; i < FOOD_PROBES; i++) {
+            int cell = nextInt(area);
+            if (owners[cell] < 0 && !food[cell])
+                return cell;
+        }
+
+        int start = nextInt(area);
+        for (int i = 0; i < area; i++) {
+            int cell = start + i < area ? start + i : start + i - area;
+            if (owners[cell] < 0 && !food[cell])
+                return cell;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the next random int in {@code [0, bound)}, see
+     * {@link Seeds#bounded(long, int)}.
+     */
+    private int nextInt(int bound) {
+        return Seeds.bounded(Seeds.mix64(randomState += Seeds.GOLDEN_GAMMA), bound);
+    }
+
+    /**
+     * Returns the number of snakes in the current game.
+     *
+     * @return the number of snakes.
+     */
+    public int getSnakeCount() {
+        return snakeCount;
+    }
+
+    /**
+     * Returns the number of snakes that are still alive.
+     *
+     * @return the number of living snakes.
+     */
+    public int getAliveCount() {
+        return aliveCount;
+    }
+
+    /**
+     * Returns the number of ticks since the last reset.
+     *
+     * @return the number of ticks.
+     */
+    public int getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Returns the number of food items on the arena, which is less than
+     * {@link #getFoodCount()} only when the arena is full.
+     *
+     * @return the number of food items on the arena.
+     */
+    public int getPlacedFood() {
+        return placedFood;
+    }
+
+    /**
+     * Returns the snake whose body covers the given cell.
+     *
+     * @param cell The packed cell index.
+     * @return the index of the snake, or -1 if the cell is free.
+     */
+    public int getOwner(int cell) {
+        return owners[cell];
+    }
+
+    /**
+     * Returns whether there is food on the given cell.
+     *
+     * @param cell The packed cell index.
+     * @return whether there is food on the cell.
+     */
+    public boolean isFood(int cell) {
+        return food[cell];
+    }
+
+    /**
+     * Returns the cell of the head of the given snake.
+     *
+     * @param snake The index of the snake.
+     * @return the packed index of the head.
+     */
+    public int getHead(int snake) {
+        return heads[snake];
+    }
+
+    /**
+     * Returns the direction the given snake is moving in.
+     *
+     * @param snake The index of the snake.
+     * @return the direction of the snake.
+     */
+    public Direction getDirection(int snake) {
+        return DIRECTIONS[directions[snake]];
+    }
+
+    /**
+     * Returns the number of segments of the given snake, which is 0 once it
+     * died.
+     *
+     * @param snake The index of the snake.
+     * @return the number of segments.
+     */
+    public int getLength(int snake) {
+        return lengths[snake];
+    }
+
+    /**
+     * Returns the length the given snake grows to.
+     *
+     * @param snake The index of the snake.
+     * @return the max length of the snake.
+     */
+    public int getMaxLength(int snake) {
+        return maxLengths[snake];
+    }
+
+    /**
+     * Returns the score of the given snake, which is the number of food
+     * items it ate, like {@link com.buaisociety.snake.Evaluation#getScore(Board)}.
+     *
+     * @param snake The index of the snake.
+     * @return the score of the snake.
+     */
+    public int getScore(int snake) {
+        return maxLengths[snake] - Board.STARTING_LENGTH;
+    }
+
+    /**
+     * Returns whether the given snake is still alive.
+     *
+     * @param snake The index of the snake.
+     * @return whether the snake is alive.
+     */
+    public boolean isAlive(int snake) {
+        return alive[snake];
+    }
+
+    /**
+     * Returns why the given snake died.
+     *
+     * @param snake The index of the snake.
+     * @return the death cause, or {@link DeathCause#NONE} if it is alive.
+     */
+    public DeathCause getDeathCause(int snake) {
+        return DEATH_CAUSES[deathCauses[snake]];
+    }
+}
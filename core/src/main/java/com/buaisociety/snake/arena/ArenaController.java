@@ -0,0 +1,23 @@
+package com.buaisociety.snake.arena;
+
+import com.buaisociety.snake.Direction;
+
+/**
+ * Decides where a snake in an {@link Arena} moves, like a
+ * {@link com.buaisociety.snake.behaviors.Behavior} does for a snake on its own
+ * board. Controllers of different snakes are called concurrently, so a
+ * controller must only read the arena and must not share mutable state with
+ * other controllers.
+ */
+@FunctionalInterface
+public interface ArenaController {
+
+    /**
+     * Returns the desired direction that the snake should move towards.
+     *
+     * @param arena The arena the snake is in.
+     * @param snake The index of the snake in the arena.
+     * @return the desired direction for the snake.
+     */
+    Direction getDirection(Arena arena, int snake);
+}
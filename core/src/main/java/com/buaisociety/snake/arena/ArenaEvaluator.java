@@ -0,0 +1,149 @@
+package com.buaisociety.snake.arena;
+
+import com.buaisociety.snake.Seeds;
+import com.buaisociety.snake.StarvationBudget;
+import com.buaisociety.snake.TickExecutor;
+import com.buaisociety.snake.network.CompiledNetwork;
+import com.buaisociety.snake.network.NetworkCompiler;
+import com.buaisociety.snake.sensors.RaySensors;
+import com.cjcrafter.neat.Client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scores a population by letting its clients compete in {@link Arena}s
+ * instead of playing alone. Clients are split into groups of
+ * {@link #getSnakesPerArena()} by their index, and every group plays one game
+ * in a pooled arena, one group after another. The score of a client is the
+ * number of food items its snake ate, like on a single board.
+ *
+ * <p>The arena of group {@code g} is seeded with
+ * {@code Seeds.split(generationSeed, g)}, so a generation is evaluated
+ * identically no matter how many threads run the arena.
+ */
+public class ArenaEvaluator {
+
+    private final Arena arena;
+    private final RaySensors sensors;
+    private final NetworkCompiler compiler;
+    private final int snakesPerArena;
+    private final List<NeatController> controllers;
+    private ArenaController[] controllerArray;
+    private int maxTicks;
+    private long ticks;
+
+    /**
+     * Creates an evaluator.
+     *
+     * @param width The width of every arena.
+     * @param height The height of every arena.
+     * @param snakesPerArena The number of clients that play in the same arena.
+     * @param foodCount The number of food items on every arena.
+     * @param sensors The sensors of every snake.
+     * @param compiler Compiles the networks of every generation.
+     * @param executor Runs the phases of every tick, see {@link Arena#tick()}.
+     */
+    public ArenaEvaluator(int width, int height, int snakesPerArena, int foodCount,
+                          RaySensors sensors, NetworkCompiler compiler, TickExecutor executor) {
+        this.arena = new Arena(width, height, snakesPerArena, executor);
+        this.arena.setFoodCount(foodCount);
+        this.sensors = sensors;
+        this.compiler = compiler;
+        this.snakesPerArena = snakesPerArena;
+        this.controllers = new ArrayList<>();
+        this.controllerArray = new ArenaController[0];
+    }
+
+    /**
+     * Returns the pooled arena every group plays in.
+     *
+     * @return the pooled arena.
+     */
+    public Arena getArena() {
+        return arena;
+    }
+
+    /**
+     * Returns the number of clients that play in the same arena.
+     *
+     * @return the number of snakes per arena.
+     */
+    public int getSnakesPerArena() {
+        return snakesPerArena;
+    }
+
+    /**
+     * Returns the maximum number of ticks of every game.
+     *
+     * @return the maximum number of ticks, or 0 if games run until every
+     *         snake is dead.
+     */
+    public int getMaxTicks() {
+        return maxTicks;
+    }
+
+    /**
+     * Sets the maximum number of ticks of every game. Snakes that are still
+     * alive when a game is cut short keep the score they have.
+     *
+     * @param maxTicks the maximum number of ticks, or 0 for no limit.
+     */
+    public void setMaxTicks(int maxTicks) {
+        this.maxTicks = maxTicks;
+    }
+
+    /**
+     * Sets how many steps snakes may take without eating, see
+     * {@link Arena#setStarvationBudget(StarvationBudget)}.
+     *
+     * @param starvationBudget the new starvation budget.
+     */
+    public void setStarvationBudget(StarvationBudget starvationBudget) {
+        arena.setStarvationBudget(starvationBudget);
+    }
+
+    /**
+     * Returns the number of ticks run by the last {@link #evaluate(List, long)},
+     * across every arena.
+     *
+     * @return the number of ticks.
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Plays one arena game per group of clients and sets the score of every
+     * client.
+     *
+     * @param clients The clients to score.
+     * @param generationSeed The seed of the generation.
+     */
+    public void evaluate(List<Client> clients, long generationSeed) {
+        CompiledNetwork[] networks = compiler.compileAll(clients);
+        while (controllers.size() < clients.size()) {
+            controllers.add(new NeatController(clients.get(controllers.size()), sensors));
+        }
+        if (controllerArray.length != clients.size())
+            controllerArray = controllers.subList(0, clients.size()).toArray(new ArenaController[0]);
+        for (int i = 0; i < clients.size(); i++) {
+            controllers.get(i).bind(clients.get(i), networks[i]);
+        }
+
+        ticks = 0;
+        for (int first = 0, group = 0; first < clients.size(); first += snakesPerArena, group++) {
+            int count = Math.min(snakesPerArena, clients.size() - first);
+            arena.reset(controllerArray, first, count, Seeds.split(generationSeed, group));
+            while (arena.tick()) {
+                if (maxTicks > 0 && arena.getTicks() >= maxTicks)
+                    break;
+            }
+            ticks += arena.getTicks();
+
+            for (int snake = 0; snake < count; snake++) {
+                clients.get(first + snake).setScore(arena.getScore(snake));
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.buaisociety.snake.arena;
+
+import com.buaisociety.snake.Direction;
+import com.buaisociety.snake.behaviors.NeatBehavior;
+import com.buaisociety.snake.network.CompiledNetwork;
+import com.buaisociety.snake.sensors.RaySensors;
+import com.cjcrafter.neat.Client;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Controls a snake in an {@link Arena} with a NEAT network, the same way
+ * {@link NeatBehavior} controls a snake on its own board. The rays see the
+ * bodies of every snake in the arena.
+ */
+public class NeatController implements ArenaController {
+
+    private final RaySensors sensors;
+    private final float[] inputs;
+    private final float[] outputs;
+    private float[] values;
+    private Client client;
+    private CompiledNetwork network;
+
+    public NeatController(Client client, RaySensors sensors) {
+        this.client = client;
+        this.sensors = sensors;
+        this.inputs = new float[sensors.getInputCount()];
+        this.outputs = new float[NeatBehavior.OUTPUTS];
+        this.values = new float[0];
+    }
+
+    /**
+     * Returns the client whose network controls the snake.
+     *
+     * @return the client whose network controls the snake.
+     */
+    public Client getClient() {
+        return client;
+    }
+
+    /**
+     * Sets the client whose network controls the snake, and the compiled
+     * network of that client.
+     *
+     * @param client the new client.
+     * @param network the compiled network of the client, or null to evaluate
+     *                the client's network directly.
+     */
+    public void bind(Client client, @Nullable CompiledNetwork network) {
+        this.client = client;
+        this.network = network;
+        if (network != null && values.length < network.getValueCount())
+            values = new float[network.getValueCount()];
+    }
+
+    @Override
+    public Direction getDirection(Arena arena, int snake) {
+        sensors.sense(arena, snake, inputs);
+        float[] outputs;
+        if (network != null) {
+            outputs = this.outputs;
+            network.evaluate(inputs, values, outputs);
+        } else {
+            outputs = client.calculate(inputs);
+        }
+
+        return NeatBehavior.steer(arena.getDirection(snake), outputs);
+    }
+}
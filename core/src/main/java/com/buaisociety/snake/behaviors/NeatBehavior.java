@@ -1,19 +1,116 @@
 package com.buaisociety.snake.behaviors;
 
 import com.buaisociety.snake.Direction;
+import com.buaisociety.snake.network.CompiledNetwork;
+import com.buaisociety.snake.sensors.RaySensors;
 import com.cjcrafter.neat.Client;
+import org.jetbrains.annotations.Nullable;
 
+/**
+ * A snake behavior that is controlled by a NEAT network. Every tick, the
+ * {@link RaySensors} fill the network's inputs, and the network picks whether
+ * to turn left, keep going forward, or turn right.
+ *
+ * <p>When a {@link CompiledNetwork} is set, it is evaluated instead of the
+ * client's network, without allocating.
+ */
 public class NeatBehavior extends Behavior {
 
+    /**
+     * The number of network outputs: turn left, go forward, turn right.
+     */
+    public static final int OUTPUTS = 3;
+
+    private final RaySensors sensors;
+    private final float[] inputs;
+    private final float[] outputs;
+    private float[] values;
     private Client client;
+    private CompiledNetwork network;
 
-    public NeatBehavior(Client client) {
+    public NeatBehavior(Client client, RaySensors sensors) {
         this.client = client;
+        this.sensors = sensors;
+        this.inputs = new float[sensors.getInputCount()];
+        this.outputs = new float[OUTPUTS];
+        this.values = new float[0];
+    }
+
+    /**
+     * Returns the client whose network controls the snake.
+     *
+     * @return the client whose network controls the snake.
+     */
+    public Client getClient() {
+        return client;
+    }
+
+    /**
+     * Sets the client whose network controls the snake. Used to rebind a
+     * pooled board to the next generation's client.
+     *
+     * @param client the new client.
+     */
+    public void setClient(Client client) {
+        this.client = client;
+    }
+
+    /**
+     * Returns the compiled network of the client, or null if the client's
+     * network is evaluated directly.
+     *
+     * @return the compiled network, or null.
+     */
+    public @Nullable CompiledNetwork getNetwork() {
+        return network;
+    }
+
+    /**
+     * Sets the compiled network of the client. The network must have been
+     * compiled from the current client's genome. Use null to evaluate the
+     * client's network directly.
+     *
+     * @param network the compiled network, or null.
+     */
+    public void setNetwork(@Nullable CompiledNetwork network) {
+        this.network = network;
+        if (network != null && values.length < network.getValueCount())
+            values = new float[network.getValueCount()];
     }
 
     @Override
     public Direction getDirection() {
-        // TODO: implement this
-        return Direction.RIGHT;
+        sensors.sense(snake, inputs);
+        float[] outputs;
+        if (network != null) {
+            outputs = this.outputs;
+            network.evaluate(inputs, values, outputs);
+        } else {
+            outputs = client.calculate(inputs);
+        }
+
+        return steer(snake.getCurrentDirection(), outputs);
+    }
+
+    /**
+     * Turns the given heading by the strongest of the network's
+     * {@link #OUTPUTS}: left, forward or right.
+     *
+     * @param heading The direction the snake is moving in.
+     * @param outputs The network outputs.
+     * @return the direction to move in.
+     */
+    public static Direction steer(Direction heading, float[] outputs) {
+        int best = 0;
+        for (int i = 1; i < OUTPUTS; i++) {
+            if (outputs[i] > outputs[best])
+                best = i;
+        }
+
+        return switch (best) {
+            case 0 -> heading.left();
+            case 2 -> heading.right();
+            default -> heading;
+        };
     }
 }
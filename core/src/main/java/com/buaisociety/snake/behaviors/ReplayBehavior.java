@@ -0,0 +1,45 @@
+package com.buaisociety.snake.behaviors;
+
+import com.buaisociety.snake.Direction;
+import com.buaisociety.snake.replay.Replay;
+
+/**
+ * A snake behavior that repeats the moves of a recorded game. Combined with
+ * the game's seed, this rebuilds the recorded game exactly (see
+ * {@link com.buaisociety.snake.replay.ReplayPlayer}).
+ */
+public class ReplayBehavior extends Behavior {
+
+    private final Replay replay;
+    private int move;
+
+    public ReplayBehavior(Replay replay) {
+        this.replay = replay;
+    }
+
+    /**
+     * Returns the number of moves that were played back so far.
+     *
+     * @return the number of played moves.
+     */
+    public int getMove() {
+        return move;
+    }
+
+    /**
+     * Returns whether there are moves left to play back.
+     *
+     * @return whether there are moves left.
+     */
+    public boolean hasNext() {
+        return move < replay.getMoveCount();
+    }
+
+    @Override
+    public Direction getDirection() {
+        if (!hasNext())
+            throw new IllegalStateException("Replay has only " + replay.getMoveCount() + " moves");
+
+        return replay.getMove(move++);
+    }
+}
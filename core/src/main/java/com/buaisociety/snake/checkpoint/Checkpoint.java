@@ -0,0 +1,285 @@
+package com.buaisociety.snake.checkpoint;
+
+import com.buaisociety.snake.Evaluation;
+import com.buaisociety.snake.StarvationBudget;
+import com.cjcrafter.neat.Neat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A saved training run: the NEAT population (including its innovation
+ * history), the run's master seed, the generation number, the best score so
+ * far, and how clients are scored. That is everything needed to resume a run
+ * where it stopped, since every board seed is derived from the run seed and
+ * the generation (see {@link com.buaisociety.snake.Seeds}), and the scoring
+ * settings are restored instead of taken from the resuming command line.
+ *
+ * <p>Checkpoints use a small binary format of length-prefixed sections, all
+ * big-endian:
+ * <pre>
+ *     int magic ("SNKC"), int version, int flags
+ *     repeated: int tag, int length, byte[length] body
+ * </pre>
+ * The {@code META} section holds the generation, run seed and best score. The
+ * {@code SETTINGS} section holds the {@link Evaluation} followed by the
+ * {@link StarvationBudget}, in the format of their {@code write} methods. The
+ * {@code POPULATION} section holds the uncompressed length of the population
+ * followed by the population itself, deflated when {@link #FLAG_COMPRESSED}
+ * is set. The population is the Java serialized form of the {@link Neat},
+ * which is the only way to reach its genomes and innovation history. Unknown
+ * sections are skipped, so newer sections can be added without breaking old
+ * readers.
+ *
+ * <p>Since a checkpoint may come from anywhere, {@link #getNeat()} only
+ * deserializes neat4j and core JDK classes, see {@link #POPULATION_FILTER}.
+ */
+public final class Checkpoint {
+
+    public static final int MAGIC = 0x534E4B43;
+    public static final int VERSION = 2;
+    public static final int FLAG_COMPRESSED = 1;
+
+    private static final int TAG_META = 1;
+    private static final int TAG_POPULATION = 2;
+    private static final int TAG_SETTINGS = 3;
+
+    private static final int SETTINGS_BYTES = Evaluation.ENCODED_BYTES + StarvationBudget.ENCODED_BYTES;
+
+    /**
+     * The classes a population may be made of. Anything else in a checkpoint
+     * is rejected before it is instantiated.
+     */
+    public static final ObjectInputFilter POPULATION_FILTER =
+            ObjectInputFilter.Config.createFilter("com.cjcrafter.neat.**;java.lang.*;java.util.**;!*");
+
+    private final int generation;
+    private final long runSeed;
+    private final double bestScore;
+    private final Evaluation evaluation;
+    private final StarvationBudget starvationBudget;
+    private final byte[] population;
+
+    /**
+     * Creates a checkpoint.
+     *
+     * @param generation The generation the population is about to evaluate.
+     * @param runSeed The master seed of the run.
+     * @param bestScore The best score any client reached so far.
+     * @param evaluation How clients are scored.
+     * @param starvationBudget How many steps snakes may take without eating.
+     * @param population The serialized population, see
+     *                   {@link CheckpointWriter#serialize(Object)}.
+     */
+    public Checkpoint(int generation, long runSeed, double bestScore, Evaluation evaluation,
+                      StarvationBudget starvationBudget, byte[] population) {
+        this.generation = generation;
+        this.runSeed = runSeed;
+        this.bestScore = bestScore;
+        this.evaluation = evaluation;
+        this.starvationBudget = starvationBudget;
+        this.population = population;
+    }
+
+    /**
+     * Returns the generation the population is about to evaluate.
+     *
+     * @return the generation number.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Returns the master seed of the run.
+     *
+     * @return the run seed.
+     */
+    public long getRunSeed() {
+        return runSeed;
+    }
+
+    /**
+     * Returns the best score any client reached before the checkpoint.
+     *
+     * @return the best score so far.
+     */
+    public double getBestScore() {
+        return bestScore;
+    }
+
+    /**
+     * Returns how clients were scored.
+     *
+     * @return the evaluation mode.
+     */
+    public Evaluation getEvaluation() {
+        return evaluation;
+    }
+
+    /**
+     * Returns how many steps snakes could take without eating.
+     *
+     * @return the starvation budget.
+     */
+    public StarvationBudget getStarvationBudget() {
+        return starvationBudget;
+    }
+
+    /**
+     * Deserializes the population.
+     *
+     * @return the population.
+     * @throws IOException if the population cannot be deserialized or holds
+     *                     classes outside of {@link #POPULATION_FILTER}.
+     */
+    public Neat getNeat() throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(population))) {
+            in.setObjectInputFilter(POPULATION_FILTER);
+            return (Neat) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Checkpoint does not contain a population", e);
+        }
+    }
+
+    /**
+     * Encodes the checkpoint.
+     *
+     * @param compress Whether to deflate the population.
+     * @return the encoded checkpoint.
+     */
+    public byte[] toBytes(boolean compress) {
+        byte[] body = compress ? deflate(population) : population;
+
+        ByteBuffer buffer = ByteBuffer.allocate(12 + (8 + 20) + (8 + SETTINGS_BYTES) + (8 + 4 + body.length));
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(compress ? FLAG_COMPRESSED : 0);
+        buffer.putInt(TAG_META).putInt(20);
+        buffer.putInt(generation).putLong(runSeed).putDouble(bestScore);
+        buffer.putInt(TAG_SETTINGS).putInt(SETTINGS_BYTES);
+        evaluation.write(buffer);
+        starvationBudget.write(buffer);
+        buffer.putInt(TAG_POPULATION).putInt(4 + body.length);
+        buffer.putInt(population.length).put(body);
+        return buffer.array();
+    }
+
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+            byte[] chunk = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(chunk);
+                out.write(chunk, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Reads a checkpoint.
+     *
+     * @param file The checkpoint file.
+     * @return the checkpoint.
+     * @throws IOException if the file cannot be read or is not a checkpoint.
+     */
+    public static Checkpoint read(Path file) throws IOException {
+        return read(ByteBuffer.wrap(Files.readAllBytes(file)), file);
+    }
+
+    private static Checkpoint read(ByteBuffer buffer, Path file) throws IOException {
+        if (buffer.remaining() < 12 || buffer.getInt() != MAGIC)
+            throw new IOException(file + " is not a checkpoint");
+
+        int version = buffer.getInt();
+        if (version > VERSION)
+            throw new IOException(file + " has version " + version + ", expected at most " + VERSION);
+        if (version < 2)
+            throw new IOException(file + " has version " + version + ", which does not store the scoring settings");
+
+        boolean compressed = (buffer.getInt() & FLAG_COMPRESSED) != 0;
+        int generation = -1;
+        long runSeed = 0;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        Evaluation evaluation = null;
+        StarvationBudget starvationBudget = null;
+        byte[] population = null;
+
+        while (buffer.remaining() >= 8) {
+            int tag = buffer.getInt();
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining())
+                throw new IOException(file + " is truncated");
+
+            ByteBuffer body = buffer.slice(buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            switch (tag) {
+                case TAG_META -> {
+                    if (length < 20)
+                        throw new IOException(file + " is corrupt");
+                    generation = body.getInt();
+                    runSeed = body.getLong();
+                    bestScore = body.getDouble();
+                }
+                case TAG_SETTINGS -> {
+                    try {
+                        evaluation = Evaluation.read(body);
+                        starvationBudget = StarvationBudget.read(body);
+                    } catch (BufferUnderflowException | IllegalArgumentException e) {
+                        throw new IOException(file + " is corrupt", e);
+                    }
+                }
+                case TAG_POPULATION -> {
+                    int size = body.getInt();
+                    if (size < 0 || (!compressed && size > body.remaining()))
+                        throw new IOException(file + " is corrupt");
+                    population = new byte[size];
+                    if (compressed) {
+                        inflate(body, population, file);
+                    } else {
+                        body.get(population);
+                    }
+                }
+                default -> {
+                    // Skip sections written by newer versions
+                }
+            }
+        }
+
+        if (generation < 0 || evaluation == null || population == null)
+            throw new IOException(file + " is missing sections");
+        return new Checkpoint(generation, runSeed, bestScore, evaluation, starvationBudget, population);
+    }
+
+    private static void inflate(ByteBuffer input, byte[] output, Path file) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            int offset = 0;
+            while (offset < output.length && !inflater.finished()) {
+                int count = inflater.inflate(output, offset, output.length - offset);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new IOException(file + " is truncated");
+                offset += count;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(file + " is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.buaisociety.snake.checkpoint;
+
+import com.buaisociety.snake.metrics.CheckpointWriteEvent;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Writes checkpoints on a background thread, so saving never stalls the
+ * simulation. The caller takes an in-memory snapshot (a byte array) and
+ * {@link #submit(String, byte[])}s it; the writer thread writes it to a
+ * temporary file and atomically renames it into the save folder, so a crash
+ * never leaves a half-written checkpoint behind:
+ * <pre>{@code
+ *     CheckpointWriter checkpoints = new CheckpointWriter(Main.getSaveFolder().toPath(), 10);
+ *     byte[] population = checkpoints.isDue(generation) ? checkpoints.snapshot("population.ckpt", neat) : null;
+ *     if (population != null) {
+ *         Checkpoint checkpoint = new Checkpoint(generation, seed, bestScore, evaluation, budget, population);
+ *         checkpoints.submit("population.ckpt", () -> checkpoint.toBytes(true));
+ *     }
+ * }</pre>
+ *
+ * <p>Every file name has at most one pending write. When the writer falls
+ * behind, a newer snapshot of the same file replaces the pending one, so
+ * stale checkpoints are skipped instead of queued (see {@link #getSkipped()}).
+ *
+ * <p>Failures do not stop training, whether an object cannot be serialized
+ * by {@link #snapshot(String, Object)} or a file cannot be written. They are
+ * printed, and the latest one is available from {@link #getFailure()}.
+ */
+public class CheckpointWriter implements AutoCloseable {
+
+    private final Path folder;
+    private volatile int every;
+
+    private final Object lock = new Object();
+    private final Map<String, Supplier<byte[]>> pending = new LinkedHashMap<>();
+    private boolean writing;
+    private boolean closed;
+    private int written;
+    private int skipped;
+    private volatile IOException failure;
+
+    private final Thread thread;
+
+    /**
+     * Creates a writer and starts its background thread.
+     *
+     * @param folder The folder checkpoints are written to.
+     * @param every Save the population every this many generations, or 0 to
+     *              never save it.
+     */
+    public CheckpointWriter(Path folder, int every) {
+        this.folder = folder;
+        setEvery(every);
+        this.thread = new Thread(this::run, "Checkpoint writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Returns the folder checkpoints are written to.
+     *
+     * @return the folder checkpoints are written to.
+     */
+    public Path getFolder() {
+        return folder;
+    }
+
+    /**
+     * Returns the number of generations between population checkpoints.
+     *
+     * @return the cadence, or 0 if the population is never saved.
+     */
+    public int getEvery() {
+        return every;
+    }
+
+    /**
+     * Sets the number of generations between population checkpoints.
+     *
+     * @param every the cadence, or 0 to never save the population.
+     */
+    public void setEvery(int every) {
+        if (every < 0)
+            throw new IllegalArgumentException("Cadence cannot be negative, got " + every);
+
+        this.every = every;
+    }
+
+    /**
+     * Returns whether the population of the given generation should be saved.
+     *
+     * @param generation The generation number.
+     * @return whether a checkpoint is due.
+     */
+    public boolean isDue(int generation) {
+        int every = this.every;
+        return every > 0 && generation % every == 0;
+    }
+
+    /**
+     * Queues the given bytes to be written to {@code folder/fileName}. If a
+     * write of the same file is still pending, it is replaced.
+     *
+     * @param fileName The name of the file in the save folder.
+     * @param bytes The contents of the file. Must not be modified afterwards.
+     */
+    public void submit(String fileName, byte[] bytes) {
+        submit(fileName, () -> bytes);
+    }
+
+    /**
+     * Queues a file to be written to {@code folder/fileName}, whose contents
+     * are encoded on the writer thread. Use this to keep expensive encoding,
+     * like compression, off the caller's thread. If a write of the same file
+     * is still pending, it is replaced without being encoded.
+     *
+     * @param fileName The name of the file in the save folder.
+     * @param encoder Encodes the contents of the file. Must only read data
+     *                that is not modified afterwards.
+     */
+    public void submit(String fileName, Supplier<byte[]> encoder) {
+        synchronized (lock) {
+            if (closed)
+                throw new IllegalStateException("Checkpoint writer is closed");
+
+            if (pending.put(fileName, encoder) != null)
+                skipped++;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Blocks until every submitted checkpoint has been written.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void flush() throws InterruptedException {
+        synchronized (lock) {
+            while (!pending.isEmpty() || writing) {
+                lock.wait();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of checkpoints written so far.
+     *
+     * @return the number of written checkpoints.
+     */
+    public int getWritten() {
+        synchronized (lock) {
+            return written;
+        }
+    }
+
+    /**
+     * Returns the number of checkpoints that were replaced by a newer one
+     * before they could be written.
+     *
+     * @return the number of skipped checkpoints.
+     */
+    public int getSkipped() {
+        synchronized (lock) {
+            return skipped;
+        }
+    }
+
+    /**
+     * Returns the latest write failure.
+     *
+     * @return the latest write failure, or null.
+     */
+    public @Nullable IOException getFailure() {
+        return failure;
+    }
+
+    private void run() {
+        List<Map.Entry<String, Supplier<byte[]>>> batch = new ArrayList<>();
+        while (true) {
+            synchronized (lock) {
+                while (pending.isEmpty() && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.isEmpty())
+                    return;
+
+                for (Map.Entry<String, Supplier<byte[]>> entry : pending.entrySet()) {
+                    batch.add(Map.entry(entry.getKey(), entry.getValue()));
+                }
+                pending.clear();
+                writing = true;
+            }
+
+            int count = 0;
+            for (Map.Entry<String, Supplier<byte[]>> entry : batch) {
+                CheckpointWriteEvent event = new CheckpointWriteEvent();
+                event.begin();
+                try {
+                    byte[] bytes = entry.getValue().get();
+                    write(entry.getKey(), bytes);
+                    count++;
+
+                    event.fileName = entry.getKey();
+                    event.bytes = bytes.length;
+                    event.commit();
+                } catch (IOException e) {
+                    failure = e;
+                    System.err.println("Failed to write checkpoint " + entry.getKey() + ": " + e);
+                } catch (UncheckedIOException e) {
+                    failure = e.getCause();
+                    System.err.println("Failed to encode checkpoint " + entry.getKey() + ": " + e.getCause());
+                }
+            }
+            batch.clear();
+
+            synchronized (lock) {
+                written += count;
+                writing = false;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void write(String fileName, byte[] bytes) throws IOException {
+        Path target = folder.resolve(fileName);
+        Path temp = folder.resolve(fileName + ".tmp");
+        Files.write(temp, bytes);
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Serializes the given object into a byte array, which is a snapshot
+     * that can be submitted while the object keeps changing.
+     *
+     * @param object The object to serialize.
+     * @return the serialized object.
+     */
+    public static byte[] serialize(Object object) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize " + object.getClass().getSimpleName(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Serializes the given object on the caller's thread, see
+     * {@link #serialize(Object)}, so it can be submitted while the object
+     * keeps changing. If the object cannot be serialized, the failure is
+     * printed and recorded like a failed write, and null is returned.
+     *
+     * @param fileName The name of the file the snapshot is for, for reporting.
+     * @param object The object to serialize.
+     * @return the serialized object, or null if it cannot be serialized.
+     */
+    public @Nullable byte[] snapshot(String fileName, Object object) {
+        try {
+            return serialize(object);
+        } catch (UncheckedIOException e) {
+            failure = e.getCause();
+            System.err.println("Failed to snapshot checkpoint " + fileName + ": " + e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * Writes every pending checkpoint and stops the background thread.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.buaisociety.snake.distributed;
+
+import com.buaisociety.snake.BoardPool;
+import com.buaisociety.snake.Evaluation;
+import com.buaisociety.snake.StarvationBudget;
+import com.buaisociety.snake.TickExecutor;
+import com.buaisociety.snake.Trainer;
+import com.buaisociety.snake.behaviors.NeatBehavior;
+import com.buaisociety.snake.network.CompiledNetwork;
+import com.buaisociety.snake.network.NetworkCompiler;
+import com.buaisociety.snake.sensors.RaySensors;
+import com.cjcrafter.neat.Client;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Plays the games of an {@link EvaluationBatch} headlessly and returns the
+ * score of every client, exactly like {@link Trainer} would for the same
+ * clients of its population. Boards and compiled networks are pooled across
+ * batches.
+ *
+ * <p>The coordinator uses an evaluator as well, for the few clients whose
+ * network cannot be sent as a graph, see
+ * {@link #evaluate(Client, int, long, Evaluation, StarvationBudget, int)}.
+ */
+public class BatchEvaluator implements AutoCloseable {
+
+    private final NetworkCompiler compiler;
+    private final BoardPool pool;
+    private final TickExecutor executor;
+    private final TickExecutor.RangeTask tickTask = this::tick;
+
+    /**
+     * Creates an evaluator.
+     *
+     * @param threads The number of threads used to update boards, or 1 to
+     *                update them on the calling thread.
+     */
+    public BatchEvaluator(int threads) {
+        RaySensors sensors = RaySensors.all();
+        this.compiler = new NetworkCompiler(sensors.getInputCount(), NeatBehavior.OUTPUTS);
+        this.pool = new BoardPool(Trainer.BOARD_WIDTH, Trainer.BOARD_HEIGHT, sensors, compiler);
+        this.executor = new TickExecutor(threads);
+    }
+
+    /**
+     * Returns the compiler used for the networks of every batch.
+     *
+     * @return the network compiler.
+     */
+    public NetworkCompiler getCompiler() {
+        return compiler;
+    }
+
+    /**
+     * Plays every game of the batch to the end.
+     *
+     * @param batch The batch to evaluate.
+     * @return the score of every client of the batch.
+     * @throws IOException if a network of the batch cannot be compiled.
+     */
+    public double[] evaluate(EvaluationBatch batch) throws IOException {
+        CompiledNetwork[] networks = new CompiledNetwork[batch.getCount()];
+        int[] clients = new int[batch.getCount()];
+        for (int i = 0; i < networks.length; i++) {
+            try {
+                networks[i] = compiler.compile(batch.getNetwork(i));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Network of client " + batch.getClient(i) + " is malformed: " + e.getMessage(), e);
+            }
+            // The coordinator keeps networks it cannot compile
+            if (networks[i] == null)
+                throw new IOException("Network of client " + batch.getClient(i) + " has a cycle");
+            clients[i] = batch.getClient(i);
+        }
+
+        pool.setEvaluation(batch.getEvaluation());
+        pool.setStarvationBudget(batch.getStarvationBudget());
+        pool.bind(networks, clients, batch.getGenerationSeed());
+        play(batch.getMaxTicks());
+
+        double[] scores = new double[networks.length];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = pool.getScore(i);
+        }
+        return scores;
+    }
+
+    /**
+     * Plays the games of a single client of a population and sets its score,
+     * like a batch that only holds this client would.
+     *
+     * @param client The client to evaluate.
+     * @param index The index of the client in the population.
+     * @param generationSeed The seed of the generation.
+     * @param evaluation How the client is scored.
+     * @param starvationBudget The starvation budget of every game.
+     * @param maxTicks The maximum number of ticks per game, or 0 for no limit.
+     */
+    public void evaluate(Client client, int index, long generationSeed, Evaluation evaluation,
+                         StarvationBudget starvationBudget, int maxTicks) {
+        pool.setEvaluation(evaluation);
+        pool.setStarvationBudget(starvationBudget);
+        pool.bind(List.of(client), generationSeed, index);
+        play(maxTicks);
+        pool.writeScores();
+    }
+
+    private void play(int maxTicks) {
+        int ticks = 0;
+        while (executor.tick(pool.getClientCount(), tickTask)) {
+            ticks++;
+            if (maxTicks > 0 && ticks >= maxTicks)
+                break;
+        }
+    }
+
+    private boolean tick(int from, int to) {
+        int episodes = pool.getEpisodes();
+        return pool.getSimulation().update(from * episodes, to * episodes);
+    }
+
+    @Override
+    public void close() {
+        executor.close();
+    }
+}
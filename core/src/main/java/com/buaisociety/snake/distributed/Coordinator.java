@@ -0,0 +1,622 @@
+package com.buaisociety.snake.distributed;
+
+import com.buaisociety.snake.Evaluation;
+import com.buaisociety.snake.StarvationBudget;
+import com.buaisociety.snake.network.CompiledNetwork;
+import com.buaisociety.snake.network.NetworkGraph;
+import com.cjcrafter.neat.Client;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates generations on remote {@link Worker}s. The coordinator owns the
+ * population and keeps evolving it locally; {@link #evaluate} only replaces
+ * ticking the boards:
+ * <pre>{@code
+ *     Coordinator coordinator = new Coordinator(Protocol.parseAddress("0.0.0.0:7000"));
+ *     trainer.evaluate(coordinator);
+ *     trainer.evolve();
+ * }</pre>
+ *
+ * <p>A generation is split into {@link EvaluationBatch}es of
+ * {@link #getBatchSize()} clients, so one round trip evaluates many genomes.
+ * Clients are sent as the {@link NetworkGraph} of their genome. The rare
+ * client without a compiled network (see
+ * {@link com.buaisociety.snake.network.NetworkCompiler}) cannot be evaluated
+ * from its graph, so the coordinator evaluates it itself.
+ * Every worker has up to {@link #getWindow()} batches in flight, so it never
+ * waits on the network between batches. Batches are handed out as workers
+ * finish, so faster workers take more of them. Once every batch is handed
+ * out, an idle worker steals the oldest batch still running on another
+ * worker and runs it too, and whichever result arrives first is used, so a
+ * slow worker cannot hold up the end of a generation.
+ *
+ * <p>A worker is dead when its connection fails, or when a batch it holds
+ * takes longer than {@link #getTimeoutMillis()}. Its batches are handed to
+ * the other workers. Workers may join at any time, even in the middle of a
+ * generation. Since boards are seeded by each client's index in the
+ * population, the scores never depend on which worker ran which batch.
+ */
+public class Coordinator implements AutoCloseable {
+
+    public static final int DEFAULT_BATCH_SIZE = 32;
+    public static final int DEFAULT_WINDOW = 2;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 120_000L;
+
+    private static final long POLL_MILLIS = 1000L;
+
+    private final SocketAddress address;
+    private final ServerSocketChannel server;
+    private final Thread acceptor;
+
+    private final Object lock = new Object();
+    private final List<Connection> workers = new ArrayList<>();
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+    private final Map<Long, Pending> pending = new HashMap<>();
+    private double[] scores;
+    private int remaining;
+    private long nextId;
+    private int connected;
+    private volatile boolean closed;
+
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+    private volatile int window = DEFAULT_WINDOW;
+    private volatile long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+    private volatile int maxTicks;
+
+    private BatchEvaluator local;
+    private int localClients;
+    private long batches;
+    private long stolen;
+    private long redispatched;
+    private int lostWorkers;
+
+    /**
+     * A batch of the current generation that has no result yet.
+     */
+    private static final class Pending {
+        private final EvaluationBatch batch;
+        private final ByteBuffer frame;
+        private int holders;
+        private boolean done;
+
+        private Pending(EvaluationBatch batch) {
+            this.batch = batch;
+            this.frame = batch.encode();
+        }
+    }
+
+    /**
+     * The connection to one worker.
+     */
+    private static final class Connection {
+        private final SocketChannel channel;
+        private final String name;
+        private final Map<Long, Long> inFlight = new LinkedHashMap<>();
+
+        private Connection(SocketChannel channel, String name) {
+            this.channel = channel;
+            this.name = name;
+        }
+    }
+
+    /**
+     * Starts listening for workers on the given address.
+     *
+     * @param address The address to listen on, see {@link Protocol#parseAddress(String)}.
+     * @throws IOException if the address cannot be bound.
+     */
+    public Coordinator(SocketAddress address) throws IOException {
+        this.address = address;
+        this.server = Protocol.listen(address);
+        this.acceptor = new Thread(this::accept, "Coordinator acceptor");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    /**
+     * Returns the address workers connect to.
+     *
+     * @return the address.
+     */
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Returns the number of clients per batch.
+     *
+     * @return the batch size.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the number of clients per batch. Larger batches amortize round
+     * trips, smaller ones spread the last clients of a generation better.
+     *
+     * @param batchSize the batch size, at least 1.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be at least 1, got " + batchSize);
+
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns the maximum number of batches a worker has in flight.
+     *
+     * @return the window.
+     */
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Sets the maximum number of batches a worker has in flight.
+     *
+     * @param window the window, at least 1.
+     */
+    public void setWindow(int window) {
+        if (window < 1)
+            throw new IllegalArgumentException("Window must be at least 1, got " + window);
+
+        this.window = window;
+    }
+
+    /**
+     * Returns how long a worker may take for a batch before it is considered
+     * dead.
+     *
+     * @return the timeout in milliseconds.
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Sets how long a worker may take for a batch before it is considered
+     * dead.
+     *
+     * @param timeoutMillis the timeout in milliseconds.
+     */
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Returns the maximum number of ticks workers play per game.
+     *
+     * @return the maximum number of ticks, or 0 for no limit.
+     */
+    public int getMaxTicks() {
+        return maxTicks;
+    }
+
+    /**
+     * Sets the maximum number of ticks workers play per game.
+     *
+     * @param maxTicks the maximum number of ticks, or 0 for no limit.
+     */
+    public void setMaxTicks(int maxTicks) {
+        this.maxTicks = maxTicks;
+    }
+
+    /**
+     * Returns the number of connected workers.
+     *
+     * @return the number of workers.
+     */
+    public int getWorkerCount() {
+        synchronized (lock) {
+            return workers.size();
+        }
+    }
+
+    /**
+     * Returns the number of clients of the last generation that the
+     * coordinator evaluated itself, since they have no compiled network.
+     *
+     * @return the number of locally evaluated clients.
+     */
+    public int getLocalClients() {
+        synchronized (lock) {
+            return localClients;
+        }
+    }
+
+    /**
+     * Returns the number of batches created so far.
+     *
+     * @return the number of batches.
+     */
+    public long getBatches() {
+        synchronized (lock) {
+            return batches;
+        }
+    }
+
+    /**
+     * Returns the number of batches an idle worker stole from a busy one.
+     *
+     * @return the number of stolen batches.
+     */
+    public long getStolen() {
+        synchronized (lock) {
+            return stolen;
+        }
+    }
+
+    /**
+     * Returns the number of batches handed out again after their worker died.
+     *
+     * @return the number of re-dispatched batches.
+     */
+    public long getRedispatched() {
+        synchronized (lock) {
+            return redispatched;
+        }
+    }
+
+    /**
+     * Returns the number of workers that died or timed out.
+     *
+     * @return the number of lost workers.
+     */
+    public int getLostWorkers() {
+        synchronized (lock) {
+            return lostWorkers;
+        }
+    }
+
+    /**
+     * Evaluates every client on the workers and sets their scores. Blocks
+     * until every batch has a result, waiting for workers to connect if
+     * there are none.
+     *
+     * @param clients The clients of the generation.
+     * @param networks The compiled network of every client, or null where
+     *                 the client is evaluated directly. Only clients with a
+     *                 network are sent to workers.
+     * @param generationSeed The seed of the generation.
+     * @param evaluation How clients are scored.
+     * @param starvationBudget The starvation budget of every game.
+     */
+    public void evaluate(List<Client> clients, CompiledNetwork[] networks, long generationSeed,
+                         Evaluation evaluation, StarvationBudget starvationBudget) {
+        List<Integer> remote = new ArrayList<>(clients.size());
+        List<Integer> direct = new ArrayList<>();
+        for (int i = 0; i < clients.size(); i++) {
+            (networks[i] == null ? direct : remote).add(i);
+        }
+
+        int size = batchSize;
+        int count = (remote.size() + size - 1) / size;
+        long firstId;
+        synchronized (lock) {
+            firstId = nextId;
+            nextId += count;
+            localClients = direct.size();
+        }
+
+        // Encode now, the genomes change once the population evolves
+        List<Pending> entries = new ArrayList<>(count);
+        for (int batch = 0; batch < count; batch++) {
+            int from = batch * size;
+            int[] indices = new int[Math.min(size, remote.size() - from)];
+            NetworkGraph[] graphs = new NetworkGraph[indices.length];
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = remote.get(from + i);
+                graphs[i] = NetworkGraph.of(clients.get(indices[i]).getGenome());
+            }
+            entries.add(new Pending(new EvaluationBatch(firstId + batch, generationSeed, maxTicks,
+                evaluation, starvationBudget, indices, graphs)));
+        }
+
+        double[] results;
+        List<Send> sends;
+        synchronized (lock) {
+            if (closed)
+                throw new IllegalStateException("Coordinator is closed");
+
+            scores = new double[clients.size()];
+            remaining = count;
+            for (Pending entry : entries) {
+                pending.put(entry.batch.getId(), entry);
+                queue.add(entry);
+            }
+            batches += count;
+            if (workers.isEmpty() && count > 0)
+                System.out.println("Waiting for workers on " + address);
+            sends = dispatch();
+        }
+        send(sends);
+
+        // Play the clients workers cannot while they run their batches
+        if (!direct.isEmpty() && local == null)
+            local = new BatchEvaluator(1);
+        for (int client : direct) {
+            local.evaluate(clients.get(client), client, generationSeed, evaluation, starvationBudget, maxTicks);
+        }
+
+        synchronized (lock) {
+            while (remaining > 0) {
+                if (closed)
+                    throw new IllegalStateException("Coordinator closed during a generation");
+
+                try {
+                    lock.wait(POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for workers", e);
+                }
+                killTimedOut();
+            }
+            results = scores;
+            scores = null;
+            queue.clear();
+            pending.clear();
+        }
+
+        for (int client : remote) {
+            clients.get(client).setScore(results[client]);
+        }
+    }
+
+    private void killTimedOut() {
+        long deadline = System.nanoTime() - timeoutMillis * 1_000_000L;
+        for (Connection worker : workers) {
+            // The oldest batch is first
+            Iterator<Long> sent = worker.inFlight.values().iterator();
+            if (sent.hasNext() && sent.next() - deadline < 0) {
+                System.out.println("Worker " + worker.name + " timed out");
+                closeQuietly(worker.channel);
+            }
+        }
+    }
+
+    private record Send(Connection worker, ByteBuffer frame) {
+    }
+
+    /**
+     * Hands queued batches to workers with room in their window, and lets
+     * idle workers steal from busy ones once the queue is empty. Must hold
+     * the lock; the returned frames are sent after releasing it.
+     */
+    private List<Send> dispatch() {
+        List<Send> sends = new ArrayList<>();
+        long now = System.nanoTime();
+        for (Connection worker : workers) {
+            while (worker.inFlight.size() < window) {
+                Pending entry = queue.poll();
+                if (entry != null && entry.done)
+                    continue;
+                if (entry == null && worker.inFlight.isEmpty()) {
+                    entry = steal(worker);
+                    if (entry != null)
+                        stolen++;
+                }
+                if (entry == null)
+                    break;
+
+                entry.holders++;
+                worker.inFlight.put(entry.batch.getId(), now);
+                sends.add(new Send(worker, entry.frame.duplicate()));
+            }
+        }
+        return sends;
+    }
+
+    private Pending steal(Connection thief) {
+        Pending oldest = null;
+        long oldestSent = 0L;
+        for (Connection worker : workers) {
+            if (worker == thief)
+                continue;
+            for (Map.Entry<Long, Long> inFlight : worker.inFlight.entrySet()) {
+                Pending entry = pending.get(inFlight.getKey());
+                if (entry == null || entry.done || entry.holders > 1)
+                    continue;
+                if (oldest == null || inFlight.getValue() - oldestSent < 0) {
+                    oldest = entry;
+                    oldestSent = inFlight.getValue();
+                }
+            }
+        }
+        return oldest;
+    }
+
+    private void send(List<Send> sends) {
+        for (Send send : sends) {
+            try {
+                synchronized (send.worker().channel) {
+                    Protocol.write(send.worker().channel, send.frame());
+                }
+            } catch (IOException e) {
+                // The reader notices the broken connection and re-dispatches
+                closeQuietly(send.worker().channel);
+            }
+        }
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                SocketChannel channel = server.accept();
+                if (channel.getRemoteAddress() instanceof InetSocketAddress)
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+                String name;
+                synchronized (lock) {
+                    name = "#" + ++connected;
+                }
+                Thread reader = new Thread(() -> read(new Connection(channel, name)), "Coordinator reader " + name);
+                reader.setDaemon(true);
+                reader.start();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (!closed)
+                    System.err.println("Failed to accept a worker: " + e);
+            }
+        }
+    }
+
+    private void read(Connection worker) {
+        boolean registered = false;
+        try {
+            ByteBuffer hello = Protocol.read(worker.channel);
+            if (hello.get() != Protocol.HELLO || hello.remaining() != 8)
+                throw new IOException("Malformed hello from worker " + worker.name);
+            if (hello.getInt() != Protocol.VERSION)
+                throw new IOException("Worker speaks a different protocol version");
+            int threads = hello.getInt();
+
+            List<Send> sends;
+            synchronized (lock) {
+                if (closed)
+                    return;
+                workers.add(worker);
+                registered = true;
+                sends = dispatch();
+            }
+            System.out.println("Worker " + worker.name + " connected with " + threads + " threads");
+            send(sends);
+
+            while (true) {
+                ByteBuffer frame = Protocol.read(worker.channel);
+                if (frame.get() != Protocol.RESULT)
+                    throw new IOException("Unexpected message from worker " + worker.name);
+
+                synchronized (lock) {
+                    complete(worker, frame);
+                    sends = dispatch();
+                    lock.notifyAll();
+                }
+                send(sends);
+            }
+        } catch (EOFException | ClosedChannelException e) {
+            if (registered && !closed)
+                System.out.println("Worker " + worker.name + " disconnected");
+        } catch (IOException e) {
+            if (!closed)
+                System.out.println("Lost worker " + worker.name + ": " + e);
+        } finally {
+            closeQuietly(worker.channel);
+            if (registered)
+                lose(worker);
+        }
+    }
+
+    /**
+     * Records the scores of a {@link Protocol#RESULT}. A result that does not
+     * match a batch the worker holds is a protocol error; the batch stays in
+     * flight, so losing the worker hands it out again.
+     */
+    private void complete(Connection worker, ByteBuffer frame) throws IOException {
+        if (frame.remaining() < 12)
+            throw new IOException("Truncated result from worker " + worker.name);
+
+        long id = frame.getLong();
+        int count = frame.getInt();
+        if (count < 0 || frame.remaining() != 8L * count)
+            throw new IOException("Result of batch " + id + " from worker " + worker.name + " has the wrong length");
+        if (!worker.inFlight.containsKey(id))
+            throw new IOException("Worker " + worker.name + " sent a result for batch " + id + " it was never sent");
+
+        Pending entry = pending.get(id);
+        if (entry != null && !entry.done && count != entry.batch.getCount())
+            throw new IOException("Worker " + worker.name + " sent " + count + " scores for batch " + id
+                + " of " + entry.batch.getCount() + " clients");
+
+        worker.inFlight.remove(id);
+        if (entry == null || entry.done)
+            return; // A stolen copy finished first, or an earlier generation
+
+        for (int i = 0; i < count; i++) {
+            scores[entry.batch.getClient(i)] = frame.getDouble();
+        }
+        entry.done = true;
+        pending.remove(id);
+        remaining--;
+    }
+
+    private void lose(Connection worker) {
+        List<Send> sends;
+        synchronized (lock) {
+            workers.remove(worker);
+            if (!closed)
+                lostWorkers++;
+
+            for (long id : worker.inFlight.keySet()) {
+                Pending entry = pending.get(id);
+                if (entry == null || entry.done)
+                    continue;
+
+                // Only hand it out again if no other worker is running it
+                if (--entry.holders == 0) {
+                    queue.addFirst(entry);
+                    redispatched++;
+                }
+            }
+            worker.inFlight.clear();
+            sends = dispatch();
+            lock.notifyAll();
+        }
+        send(sends);
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Already broken
+        }
+    }
+
+    /**
+     * Stops accepting workers and closes every connection, which stops the
+     * workers.
+     */
+    @Override
+    public void close() {
+        List<Connection> connections;
+        synchronized (lock) {
+            closed = true;
+            connections = new ArrayList<>(workers);
+            lock.notifyAll();
+        }
+
+        try {
+            server.close();
+            if (address instanceof UnixDomainSocketAddress unix)
+                Files.deleteIfExists(unix.getPath());
+        } catch (IOException e) {
+            System.err.println("Failed to close " + address + ": " + e);
+        }
+        for (Connection worker : connections) {
+            closeQuietly(worker.channel);
+        }
+        if (local != null)
+            local.close();
+    }
+}
@@ -0,0 +1,199 @@
+package com.buaisociety.snake.distributed;
+
+import com.buaisociety.snake.Evaluation;
+import com.buaisociety.snake.StarvationBudget;
+import com.buaisociety.snake.network.NetworkGraph;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Some clients of the population to evaluate: the index and the
+ * {@link NetworkGraph} of every client, plus everything needed to play the
+ * same games a local run would. Boards are seeded from the generation seed
+ * and each client's index in the whole population (see
+ * {@link com.buaisociety.snake.BoardPool#bind(com.buaisociety.snake.network.CompiledNetwork[], int[], long)}),
+ * so the scores do not depend on which worker evaluates which batch.
+ *
+ * <p>Encoded as a {@link Protocol#BATCH} frame:
+ * <pre>
+ *     long id, long generationSeed, int maxTicks
+ *     evaluation (see {@link Evaluation#write(ByteBuffer)})
+ *     starvation budget (see {@link StarvationBudget#write(ByteBuffer)})
+ *     int count, repeated: int client, graph (see {@link NetworkGraph#write(ByteBuffer)})
+ * </pre>
+ * Networks are sent as plain graphs rather than serialized genomes, so a
+ * worker never deserializes objects from the network.
+ */
+public final class EvaluationBatch {
+
+    private static final int HEADER_BYTES = 8 + 8 + 4 + Evaluation.ENCODED_BYTES + StarvationBudget.ENCODED_BYTES + 4;
+
+    private final long id;
+    private final long generationSeed;
+    private final int maxTicks;
+    private final Evaluation evaluation;
+    private final StarvationBudget starvationBudget;
+    private final int[] clients;
+    private final NetworkGraph[] networks;
+
+    /**
+     * Creates a batch.
+     *
+     * @param id The id of the batch, unique across generations.
+     * @param generationSeed The seed of the generation.
+     * @param maxTicks The maximum number of ticks per game, or 0 for no limit.
+     * @param evaluation How clients are scored.
+     * @param starvationBudget The starvation budget of every game.
+     * @param clients The index of every client of the batch in the population.
+     * @param networks The network of every client of the batch.
+     */
+    public EvaluationBatch(long id, long generationSeed, int maxTicks, Evaluation evaluation,
+                           StarvationBudget starvationBudget, int[] clients, NetworkGraph[] networks) {
+        if (clients.length != networks.length)
+            throw new IllegalArgumentException("Expected a network for each of the " + clients.length + " clients");
+
+        this.id = id;
+        this.generationSeed = generationSeed;
+        this.maxTicks = maxTicks;
+        this.evaluation = evaluation;
+        this.starvationBudget = starvationBudget;
+        this.clients = clients;
+        this.networks = networks;
+    }
+
+    /**
+     * Returns the id of the batch.
+     *
+     * @return the batch id.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Returns the seed of the generation.
+     *
+     * @return the generation seed.
+     */
+    public long getGenerationSeed() {
+        return generationSeed;
+    }
+
+    /**
+     * Returns the maximum number of ticks per game.
+     *
+     * @return the maximum number of ticks, or 0 for no limit.
+     */
+    public int getMaxTicks() {
+        return maxTicks;
+    }
+
+    /**
+     * Returns how clients are scored.
+     *
+     * @return the evaluation.
+     */
+    public Evaluation getEvaluation() {
+        return evaluation;
+    }
+
+    /**
+     * Returns the starvation budget of every game.
+     *
+     * @return the starvation budget.
+     */
+    public StarvationBudget getStarvationBudget() {
+        return starvationBudget;
+    }
+
+    /**
+     * Returns the number of clients in the batch.
+     *
+     * @return the number of clients.
+     */
+    public int getCount() {
+        return clients.length;
+    }
+
+    /**
+     * Returns the index of the given client of the batch in the population.
+     *
+     * @param index The index of the client in the batch.
+     * @return the index of the client in the population.
+     */
+    public int getClient(int index) {
+        return clients[index];
+    }
+
+    /**
+     * Returns the network of the given client of the batch.
+     *
+     * @param index The index of the client in the batch.
+     * @return the network graph.
+     */
+    public NetworkGraph getNetwork(int index) {
+        return networks[index];
+    }
+
+    /**
+     * Encodes the batch as a frame, ready to be written.
+     *
+     * @return the frame.
+     */
+    public ByteBuffer encode() {
+        int size = HEADER_BYTES;
+        for (NetworkGraph network : networks) {
+            size += 4 + network.getEncodedSize();
+        }
+
+        ByteBuffer frame = Protocol.frame(Protocol.BATCH, size);
+        frame.putLong(id).putLong(generationSeed).putInt(maxTicks);
+        evaluation.write(frame);
+        starvationBudget.write(frame);
+        frame.putInt(clients.length);
+        for (int i = 0; i < clients.length; i++) {
+            frame.putInt(clients[i]);
+            networks[i].write(frame);
+        }
+        return frame.flip();
+    }
+
+    /**
+     * Decodes the body of a {@link Protocol#BATCH} frame.
+     *
+     * @param body The frame, positioned after its type byte.
+     * @return the batch.
+     * @throws IOException if the frame does not hold a valid batch.
+     */
+    public static EvaluationBatch decode(ByteBuffer body) throws IOException {
+        try {
+            long id = body.getLong();
+            long generationSeed = body.getLong();
+            int maxTicks = body.getInt();
+            Evaluation evaluation = Evaluation.read(body);
+            StarvationBudget starvationBudget = StarvationBudget.read(body);
+
+            // Every client takes at least its index and two counts
+            int count = body.getInt();
+            if (count < 0 || count > body.remaining() / 12)
+                throw new IOException("Batch is truncated, expected " + count + " clients");
+            int[] clients = new int[count];
+            NetworkGraph[] networks = new NetworkGraph[count];
+            for (int i = 0; i < count; i++) {
+                clients[i] = body.getInt();
+                if (clients[i] < 0)
+                    throw new IOException("Invalid client index " + clients[i]);
+                networks[i] = NetworkGraph.read(body);
+            }
+            if (body.hasRemaining())
+                throw new IOException("Batch has " + body.remaining() + " trailing bytes");
+            return new EvaluationBatch(id, generationSeed, maxTicks, evaluation, starvationBudget, clients, networks);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Batch is truncated", e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid batch: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.buaisociety.snake.distributed;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+
+/**
+ * The wire format between a {@link Coordinator} and its {@link Worker}s. Every
+ * message is a frame of an {@code int} length followed by that many bytes,
+ * the first of which is the message type. Everything is big-endian:
+ * <pre>
+ *     HELLO  (worker): int version, int threads
+ *     BATCH  (coordinator): see {@link EvaluationBatch#encode()}
+ *     RESULT (worker): long batch id, int count, double[count] scores
+ * </pre>
+ *
+ * <p>Addresses are either {@code host:port} for TCP, or {@code unix:<path>}
+ * for a Unix domain socket, which is the fastest way to run workers on the
+ * same host.
+ */
+public final class Protocol {
+
+    public static final int VERSION = 2;
+
+    public static final byte HELLO = 1;
+    public static final byte BATCH = 2;
+    public static final byte RESULT = 3;
+
+    // Anything larger is a corrupt stream, not a real batch
+    private static final int MAX_FRAME_BYTES = 256 * 1024 * 1024;
+
+    private Protocol() {
+    }
+
+    /**
+     * Parses an address, either {@code host:port} or {@code unix:<path>}.
+     *
+     * @param address The address to parse.
+     * @return the socket address.
+     */
+    public static SocketAddress parseAddress(String address) {
+        if (address.startsWith("unix:"))
+            return UnixDomainSocketAddress.of(address.substring("unix:".length()));
+
+        int colon = address.lastIndexOf(':');
+        if (colon < 0)
+            throw new IllegalArgumentException("Expected host:port or unix:<path>, got " + address);
+
+        String host = address.substring(0, colon);
+        int port = Integer.parseInt(address.substring(colon + 1));
+        return host.isEmpty() ? new InetSocketAddress(port) : new InetSocketAddress(host, port);
+    }
+
+    /**
+     * Opens a server socket on the given address. A stale Unix domain socket
+     * file left behind by a previous run is deleted first.
+     *
+     * @param address The address to listen on.
+     * @return the bound server channel.
+     * @throws IOException if the address cannot be bound.
+     */
+    public static ServerSocketChannel listen(SocketAddress address) throws IOException {
+        if (address instanceof UnixDomainSocketAddress unix) {
+            Files.deleteIfExists(unix.getPath());
+            return ServerSocketChannel.open(StandardProtocolFamily.UNIX).bind(unix);
+        }
+        return ServerSocketChannel.open().bind(address);
+    }
+
+    /**
+     * Creates a frame with room for a body of the given size, with the
+     * length and type already written. Fill in the body, then
+     * {@link ByteBuffer#flip()} it and {@link #write(SocketChannel, ByteBuffer)} it.
+     *
+     * @param type The message type.
+     * @param bodyBytes The size of the body, not counting the type.
+     * @return the frame.
+     */
+    public static ByteBuffer frame(byte type, int bodyBytes) {
+        ByteBuffer frame = ByteBuffer.allocate(4 + 1 + bodyBytes);
+        frame.putInt(1 + bodyBytes).put(type);
+        return frame;
+    }
+
+    /**
+     * Writes a whole frame. Frames written from several threads must be
+     * synchronized on the channel by the caller.
+     *
+     * @param channel The channel to write to.
+     * @param frame The frame, positioned at its start.
+     * @throws IOException if the connection failed.
+     */
+    public static void write(SocketChannel channel, ByteBuffer frame) throws IOException {
+        while (frame.hasRemaining()) {
+            channel.write(frame);
+        }
+    }
+
+    /**
+     * Reads the next frame, blocking until it arrived completely.
+     *
+     * @param channel The channel to read from.
+     * @return the frame, positioned at its type byte.
+     * @throws EOFException if the other side closed the connection.
+     * @throws IOException if the connection failed or the frame is corrupt.
+     */
+    public static ByteBuffer read(SocketChannel channel) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(channel, length);
+        int bytes = length.flip().getInt();
+        if (bytes < 1 || bytes > MAX_FRAME_BYTES)
+            throw new IOException("Invalid frame length " + bytes);
+
+        ByteBuffer frame = ByteBuffer.allocate(bytes);
+        readFully(channel, frame);
+        return frame.flip();
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0)
+                throw new EOFException("Connection closed");
+        }
+    }
+}
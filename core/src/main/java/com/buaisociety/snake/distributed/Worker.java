@@ -0,0 +1,189 @@
+package com.buaisociety.snake.distributed;
+
+import com.buaisociety.snake.Evaluation;
+import com.buaisociety.snake.StarvationBudget;
+import com.buaisociety.snake.network.NetworkGraph;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Connects to a {@link Coordinator}, evaluates the batches it sends with a
+ * {@link BatchEvaluator}, and sends back the scores, until the coordinator
+ * closes the connection. Batches are read as soon as they arrive and queued,
+ * so the coordinator can keep several batches in flight and never waits on
+ * a busy worker.
+ *
+ * <p>Run it with {@code ./gradlew core:worker --args="--connect host:7000"},
+ * supported arguments:
+ * <ul>
+ *     <li>{@code --connect <address>}: the coordinator's address,
+ *         {@code host:port} or {@code unix:<path>} (required).</li>
+ *     <li>{@code --threads <n>}: the number of threads used to update boards
+ *         (default is the number of available processors).</li>
+ *     <li>{@code --retry <seconds>}: how long to keep trying to connect
+ *         while the coordinator is not up yet (default 30).</li>
+ * </ul>
+ */
+public final class Worker implements AutoCloseable {
+
+    // Queued by the reader when the connection ends
+    private static final EvaluationBatch CLOSED =
+        new EvaluationBatch(-1L, 0L, 0, Evaluation.SINGLE, StarvationBudget.UNLIMITED, new int[0], new NetworkGraph[0]);
+
+    private final SocketChannel channel;
+    private final BatchEvaluator evaluator;
+    private final int threads;
+    private final BlockingQueue<EvaluationBatch> batches = new LinkedBlockingQueue<>();
+    private volatile IOException failure;
+    private int evaluated;
+
+    /**
+     * Creates a worker on an open connection to a coordinator.
+     *
+     * @param channel The connection to the coordinator.
+     * @param threads The number of threads used to update boards.
+     */
+    public Worker(SocketChannel channel, int threads) {
+        this.channel = channel;
+        this.threads = threads;
+        this.evaluator = new BatchEvaluator(threads);
+    }
+
+    /**
+     * Connects to the coordinator at the given address, retrying until it
+     * accepts the connection or the timeout runs out.
+     *
+     * @param address The address of the coordinator.
+     * @param retryMillis How long to keep retrying.
+     * @return the connection.
+     * @throws IOException if the coordinator cannot be reached.
+     */
+    public static SocketChannel connect(SocketAddress address, long retryMillis) throws IOException {
+        long deadline = System.currentTimeMillis() + retryMillis;
+        while (true) {
+            try {
+                SocketChannel channel = SocketChannel.open(address);
+                if (address instanceof InetSocketAddress)
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                return channel;
+            } catch (IOException e) {
+                // Refused, or the socket file does not exist yet
+                if (System.currentTimeMillis() >= deadline)
+                    throw e;
+            }
+
+            try {
+                Thread.sleep(250);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while connecting to " + address, e);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of batches evaluated so far.
+     *
+     * @return the number of evaluated batches.
+     */
+    public int getEvaluated() {
+        return evaluated;
+    }
+
+    /**
+     * Evaluates batches until the coordinator closes the connection.
+     *
+     * @throws IOException if the connection failed or a batch is corrupt.
+     */
+    public void run() throws IOException {
+        ByteBuffer hello = Protocol.frame(Protocol.HELLO, 8);
+        hello.putInt(Protocol.VERSION).putInt(threads);
+        Protocol.write(channel, hello.flip());
+
+        Thread reader = new Thread(this::read, "Worker reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        while (true) {
+            EvaluationBatch batch;
+            try {
+                batch = batches.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (batch == CLOSED)
+                break;
+
+            long start = System.nanoTime();
+            double[] scores = evaluator.evaluate(batch);
+            ByteBuffer result = Protocol.frame(Protocol.RESULT, 8 + 4 + 8 * scores.length);
+            result.putLong(batch.getId()).putInt(scores.length);
+            for (double score : scores) {
+                result.putDouble(score);
+            }
+            Protocol.write(channel, result.flip());
+
+            evaluated++;
+            System.out.printf("Batch %d: %d clients in %.3fs%n", batch.getId(), scores.length, (System.nanoTime() - start) / 1e9);
+        }
+
+        if (failure != null)
+            throw failure;
+    }
+
+    private void read() {
+        try {
+            while (true) {
+                ByteBuffer frame = Protocol.read(channel);
+                byte type = frame.get();
+                if (type != Protocol.BATCH)
+                    throw new IOException("Unexpected message type " + type);
+                batches.add(EvaluationBatch.decode(frame));
+            }
+        } catch (EOFException e) {
+            // The coordinator is done
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            batches.add(CLOSED);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        evaluator.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        String address = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        double retry = 30.0;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--connect" -> address = args[++i];
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--retry" -> retry = Double.parseDouble(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+        if (address == null)
+            throw new IllegalArgumentException("Usage: Worker --connect <host:port|unix:path> [--threads n]");
+
+        try (Worker worker = new Worker(connect(Protocol.parseAddress(address), (long) (retry * 1000)), threads)) {
+            System.out.println("Connected to " + address + " with " + threads + " threads");
+            worker.run();
+            System.out.println("Coordinator closed the connection after " + worker.getEvaluated() + " batches");
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.buaisociety.snake.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event that times encoding and writing one file on
+ * the {@link com.buaisociety.snake.checkpoint.CheckpointWriter} thread.
+ */
+@Name("com.buaisociety.snake.CheckpointWrite")
+@Label("Checkpoint Write")
+@Category({"Snake", "Checkpoints"})
+@Description("Encoding and writing one checkpoint file")
+public class CheckpointWriteEvent extends Event {
+
+    @Label("File Name")
+    public String fileName;
+
+    @Label("Size")
+    @DataAmount
+    public long bytes;
+}
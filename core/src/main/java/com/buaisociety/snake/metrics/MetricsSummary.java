@@ -0,0 +1,115 @@
+package com.buaisociety.snake.metrics;
+
+import java.util.Locale;
+
+/**
+ * The training throughput over one reporting window of
+ * {@link TrainingMetrics}.
+ */
+public final class MetricsSummary {
+
+    /**
+     * The header of the CSV file, matching {@link #toCsvRow()}.
+     */
+    public static final String CSV_HEADER = "elapsed_seconds,generation,ticks,ticks_per_second,generations_per_minute,allocated_mb_per_second,p99_tick_ms\n";
+
+    private final double elapsedSeconds;
+    private final int generation;
+    private final long ticks;
+    private final double ticksPerSecond;
+    private final double generationsPerMinute;
+    private final double allocatedMegabytesPerSecond;
+    private final double p99TickMillis;
+
+    MetricsSummary(double elapsedSeconds, int generation, long ticks, double ticksPerSecond,
+                   double generationsPerMinute, double allocatedMegabytesPerSecond, double p99TickMillis) {
+        this.elapsedSeconds = elapsedSeconds;
+        this.generation = generation;
+        this.ticks = ticks;
+        this.ticksPerSecond = ticksPerSecond;
+        this.generationsPerMinute = generationsPerMinute;
+        this.allocatedMegabytesPerSecond = allocatedMegabytesPerSecond;
+        this.p99TickMillis = p99TickMillis;
+    }
+
+    /**
+     * Returns the time since the metrics were created.
+     *
+     * @return the elapsed time in seconds.
+     */
+    public double getElapsedSeconds() {
+        return elapsedSeconds;
+    }
+
+    /**
+     * Returns the generation that was running at the end of the window.
+     *
+     * @return the generation number.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Returns the number of ticks run in the window.
+     *
+     * @return the number of ticks.
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Returns the number of ticks per second of wall clock time.
+     *
+     * @return the tick rate.
+     */
+    public double getTicksPerSecond() {
+        return ticksPerSecond;
+    }
+
+    /**
+     * Returns the number of generations evolved per minute.
+     *
+     * @return the generation rate.
+     */
+    public double getGenerationsPerMinute() {
+        return generationsPerMinute;
+    }
+
+    /**
+     * Returns the heap allocation rate of the whole process.
+     *
+     * @return the allocation rate in megabytes per second, or NaN if the JVM
+     *         cannot measure it.
+     */
+    public double getAllocatedMegabytesPerSecond() {
+        return allocatedMegabytesPerSecond;
+    }
+
+    /**
+     * Returns the 99th percentile of the tick durations in the window.
+     *
+     * @return the 99th percentile tick latency in milliseconds.
+     */
+    public double getP99TickMillis() {
+        return p99TickMillis;
+    }
+
+    /**
+     * Formats the summary as one CSV row, see {@link #CSV_HEADER}.
+     *
+     * @return the CSV row, including the line break.
+     */
+    public String toCsvRow() {
+        return String.format(Locale.ROOT, "%.3f,%d,%d,%.1f,%.2f,%.2f,%.4f%n",
+            elapsedSeconds, generation, ticks, ticksPerSecond, generationsPerMinute,
+            allocatedMegabytesPerSecond, p99TickMillis);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "Metrics: %.0f ticks/s, %.2f generations/min, %.1f MB/s allocated, p99 tick %.3fms (generation %d)",
+            ticksPerSecond, generationsPerMinute, allocatedMegabytesPerSecond, p99TickMillis, generation);
+    }
+}
@@ -0,0 +1,87 @@
+package com.buaisociety.snake.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event that times one phase of
+ * {@link com.buaisociety.snake.Trainer#evolve()}. Like every JFR event, it
+ * costs next to nothing unless a recording is running:
+ * <pre>{@code
+ *     PhaseEvent event = PhaseEvent.start(PhaseEvent.Phase.EVOLVE, generation);
+ *     neat.evolve();
+ *     event.commit();
+ * }</pre>
+ */
+@Name("com.buaisociety.snake.Phase")
+@Label("Training Phase")
+@Category({"Snake", "Training"})
+@Description("One phase of evolving the population between two generations")
+public class PhaseEvent extends Event {
+
+    /**
+     * The phases of evolving a generation, in the order they run.
+     */
+    public enum Phase {
+
+        /**
+         * Aggregating the episode scores of every client.
+         */
+        SCORE,
+
+        /**
+         * Queueing the best genome and recording replays.
+         */
+        SAVE,
+
+        /**
+         * Running {@code neat.evolve()}.
+         */
+        EVOLVE,
+
+        /**
+         * Rendering and printing the population summary.
+         */
+        RENDER,
+
+        /**
+         * Serializing the population for a checkpoint on the training
+         * thread. Compressing and writing it, and the NeatSaver copy made
+         * from the same snapshot, happen on the checkpoint writer thread
+         * and are not part of this phase.
+         */
+        CHECKPOINT,
+
+        /**
+         * Rebinding the pooled boards to the next generation's clients.
+         */
+        REBIND
+    }
+
+    @Label("Phase")
+    private String phase;
+
+    @Label("Generation")
+    private int generation;
+
+    private PhaseEvent(Phase phase, int generation) {
+        this.phase = phase.name();
+        this.generation = generation;
+    }
+
+    /**
+     * Creates an event for the given phase and starts timing it.
+     *
+     * @param phase The phase that is about to run.
+     * @param generation The current generation.
+     * @return the started event, which must be committed once the phase ends.
+     */
+    public static PhaseEvent start(Phase phase, int generation) {
+        PhaseEvent event = new PhaseEvent(phase, generation);
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,29 @@
+package com.buaisociety.snake.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event that times one tick of every board (see
+ * {@link com.buaisociety.snake.Trainer#tick()}). The number of living snakes
+ * is only counted when the event is actually recorded. Ticks are frequent,
+ * so no stack trace is taken.
+ */
+@Name("com.buaisociety.snake.Tick")
+@Label("Training Tick")
+@Category({"Snake", "Training"})
+@Description("One update of every board of the population")
+@StackTrace(false)
+public class TickEvent extends Event {
+
+    @Label("Generation")
+    public int generation;
+
+    @Label("Alive")
+    @Description("The number of games still running after the tick")
+    public int alive;
+}
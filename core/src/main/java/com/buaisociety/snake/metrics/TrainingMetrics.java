@@ -0,0 +1,148 @@
+package com.buaisociety.snake.metrics;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Collects the duration of every tick and the number of evolved generations,
+ * and turns them into a {@link MetricsSummary} once per reporting interval.
+ * Every summary is printed and appended to a CSV file (see
+ * {@link MetricsSummary#CSV_HEADER}).
+ *
+ * <p>Recording a tick only stores its duration in an array, which is sorted
+ * when the summary is made to find the 99th percentile. The allocation rate
+ * is the difference in the bytes allocated by all live threads, which
+ * HotSpot tracks anyway.
+ */
+public class TrainingMetrics {
+
+    private static final int INITIAL_TICKS = 1024;
+
+    private final Path csvFile;
+    private final long intervalNanos;
+    private final long startNanos;
+    private final ThreadMXBean threads;
+
+    private long[] tickNanos = new long[INITIAL_TICKS];
+    private int tickCount;
+    private int generations;
+    private long windowStartNanos;
+    private long windowStartBytes;
+
+    /**
+     * Creates a collector. The first window starts now.
+     *
+     * @param csvFile The CSV file summaries are appended to.
+     * @param intervalSeconds The length of a reporting window in seconds.
+     */
+    public TrainingMetrics(Path csvFile, double intervalSeconds) {
+        if (!(intervalSeconds > 0.0))
+            throw new IllegalArgumentException("Interval must be positive, got " + intervalSeconds);
+
+        this.csvFile = csvFile;
+        this.intervalNanos = (long) (intervalSeconds * 1e9);
+        this.threads = ManagementFactory.getThreadMXBean();
+        this.startNanos = System.nanoTime();
+        this.windowStartNanos = startNanos;
+        this.windowStartBytes = allocatedBytes();
+    }
+
+    /**
+     * Returns the CSV file summaries are appended to.
+     *
+     * @return the CSV file.
+     */
+    public Path getCsvFile() {
+        return csvFile;
+    }
+
+    /**
+     * Records the duration of one tick.
+     *
+     * @param nanos The duration of the tick in nanoseconds.
+     */
+    public void recordTick(long nanos) {
+        if (tickCount == tickNanos.length)
+            tickNanos = Arrays.copyOf(tickNanos, tickNanos.length * 2);
+        tickNanos[tickCount++] = nanos;
+    }
+
+    /**
+     * Records that a generation was evolved.
+     */
+    public void recordGeneration() {
+        generations++;
+    }
+
+    /**
+     * Summarizes the current window and starts a new one, if the window is
+     * longer than the reporting interval.
+     *
+     * @param generation The current generation.
+     * @return the summary, or null if the window is not over yet.
+     */
+    public @Nullable MetricsSummary poll(int generation) {
+        long now = System.nanoTime();
+        long elapsed = now - windowStartNanos;
+        if (elapsed < intervalNanos)
+            return null;
+
+        double seconds = elapsed / 1e9;
+        long bytes = allocatedBytes();
+        double allocated = bytes < 0 || windowStartBytes < 0
+            ? Double.NaN
+            : Math.max(bytes - windowStartBytes, 0L) / 1e6 / seconds;
+
+        MetricsSummary summary = new MetricsSummary((now - startNanos) / 1e9, generation, tickCount,
+            tickCount / seconds, generations * 60.0 / seconds, allocated, percentile(0.99) / 1e6);
+
+        tickCount = 0;
+        generations = 0;
+        windowStartNanos = now;
+        windowStartBytes = bytes;
+        write(summary);
+        return summary;
+    }
+
+    private double percentile(double quantile) {
+        if (tickCount == 0)
+            return 0.0;
+
+        Arrays.sort(tickNanos, 0, tickCount);
+        int index = (int) Math.ceil(quantile * tickCount) - 1;
+        return tickNanos[Math.max(index, 0)];
+    }
+
+    private long allocatedBytes() {
+        if (!(threads instanceof com.sun.management.ThreadMXBean bean)
+            || !bean.isThreadAllocatedMemorySupported() || !bean.isThreadAllocatedMemoryEnabled())
+            return -1L;
+
+        // Threads that died since the last window are not counted
+        long total = 0L;
+        for (long bytes : bean.getThreadAllocatedBytes(bean.getAllThreadIds())) {
+            if (bytes > 0)
+                total += bytes;
+        }
+        return total;
+    }
+
+    private void write(MetricsSummary summary) {
+        try {
+            if (Files.notExists(csvFile))
+                Files.writeString(csvFile, MetricsSummary.CSV_HEADER, StandardCharsets.UTF_8);
+            Files.writeString(csvFile, summary.toCsvRow(), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write " + csvFile, e);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.buaisociety.snake.network;
+
+/**
+ * A feed-forward network flattened into primitive arrays. Nodes are stored
+ * in topological order, so the network is evaluated with a single pass over
+ * the arrays: every computed node sums its weighted incoming values and
+ * applies the activation function. Evaluation never allocates.
+ *
+ * <p>Values are laid out as {@code [inputs..., computed nodes...]}. Node
+ * {@code n} (counting computed nodes only) reads its incoming connections
+ * from {@code sources[offsets[n]..offsets[n + 1])}, which are indices into
+ * the value array, weighted by the matching {@code weights}.
+ *
+ * <p>A compiled network is immutable. The caller provides the value buffer,
+ * so one network can be evaluated from several threads at once.
+ */
+public final class CompiledNetwork {
+
+    /**
+     * The function applied to the weighted sum of every computed node.
+     */
+    @FunctionalInterface
+    public interface Activation {
+        float apply(float x);
+    }
+
+    /**
+     * The logistic sigmoid, {@code 1 / (1 + e^-x)}.
+     */
+    public static final Activation SIGMOID = x -> (float) (1.0 / (1.0 + Math.exp(-x)));
+
+    private final int inputCount;
+    private final int[] offsets;
+    private final int[] sources;
+    private final float[] weights;
+    private final int[] outputSlots;
+    private final Activation activation;
+
+    CompiledNetwork(int inputCount, int[] offsets, int[] sources, float[] weights, int[] outputSlots, Activation activation) {
+        this.inputCount = inputCount;
+        this.offsets = offsets;
+        this.sources = sources;
+        this.weights = weights;
+        this.outputSlots = outputSlots;
+        this.activation = activation;
+    }
+
+    /**
+     * Returns the number of inputs.
+     *
+     * @return the number of inputs.
+     */
+    public int getInputCount() {
+        return inputCount;
+    }
+
+    /**
+     * Returns the number of outputs.
+     *
+     * @return the number of outputs.
+     */
+    public int getOutputCount() {
+        return outputSlots.length;
+    }
+
+    /**
+     * Returns the size of the value buffer needed by
+     * {@link #evaluate(float[], float[], float[])}.
+     *
+     * @return the number of values (inputs plus computed nodes).
+     */
+    public int getValueCount() {
+        return inputCount + offsets.length - 1;
+    }
+
+    /**
+     * Returns the number of enabled connections.
+     *
+     * @return the number of enabled connections.
+     */
+    public int getConnectionCount() {
+        return sources.length;
+    }
+
+    /**
+     * Evaluates the network.
+     *
+     * @param inputs The inputs, at least {@link #getInputCount()} long.
+     * @param values Scratch space, at least {@link #getValueCount()} long.
+     * @param outputs Receives the outputs, at least {@link #getOutputCount()} long.
+     */
+    public void evaluate(float[] inputs, float[] values, float[] outputs) {
+        System.arraycopy(inputs, 0, values, 0, inputCount);
+
+        int nodes = offsets.length - 1;
+        for (int node = 0; node < nodes; node++) {
+            float sum = 0f;
+            for (int connection = offsets[node]; connection < offsets[node + 1]; connection++) {
+                sum += weights[connection] * values[sources[connection]];
+            }
+            values[inputCount + node] = activation.apply(sum);
+        }
+
+        for (int i = 0; i < outputSlots.length; i++) {
+            outputs[i] = values[outputSlots[i]];
+        }
+    }
+}
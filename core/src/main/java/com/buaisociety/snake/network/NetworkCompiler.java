@@ -0,0 +1,362 @@
+package com.buaisociety.snake.network;
+
+import com.cjcrafter.neat.Client;
+import com.cjcrafter.neat.genome.ConnectionGene;
+import com.cjcrafter.neat.genome.Genome;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Compiles the genomes of a population into {@link CompiledNetwork}s once per
+ * generation, so boards evaluate flat arrays instead of walking each
+ * {@link Client}'s node graph every tick.
+ *
+ * <p>Compiled networks are cached by genome identity. Since genomes may be
+ * mutated in place during evolution, a cached network is only reused when a
+ * fingerprint of the genome's enabled connections is unchanged as well, so
+ * elites that survive a generation untouched are not recompiled.
+ *
+ * <p>Every newly compiled network is checked against the reference
+ * {@link Client#calculate(float[])} on a few random inputs. A genome that
+ * cannot be compiled (for example one with a recurrent connection) or whose
+ * compiled output does not match is not compiled, and its client is used
+ * directly instead. Why the first such client was rejected is kept for the
+ * caller to report, see {@link #pollRejection()}, so a broken compiler cannot
+ * silently fall back to the slow path for the whole population. Exceptions
+ * other than a malformed genome are bugs in the compiler, so they are thrown
+ * instead of caught.
+ */
+public class NetworkCompiler {
+
+    private static final int VERIFY_SAMPLES = 4;
+    private static final float VERIFY_TOLERANCE = 1e-4f;
+
+    private final int inputCount;
+    private final int outputCount;
+    private final CompiledNetwork.Activation activation;
+
+    private Map<Genome, Entry> cache = new IdentityHashMap<>();
+    private int compiled;
+    private int reused;
+    private int rejected;
+    private String rejection;
+
+    /**
+     * Creates a compiler for networks with the given shape, using the
+     * {@link CompiledNetwork#SIGMOID} activation.
+     *
+     * @param inputCount The number of network inputs.
+     * @param outputCount The number of network outputs.
+     */
+    public NetworkCompiler(int inputCount, int outputCount) {
+        this(inputCount, outputCount, CompiledNetwork.SIGMOID);
+    }
+
+    /**
+     * Creates a compiler for networks with the given shape.
+     *
+     * @param inputCount The number of network inputs.
+     * @param outputCount The number of network outputs.
+     * @param activation The activation function used by the reference network.
+     */
+    public NetworkCompiler(int inputCount, int outputCount, CompiledNetwork.Activation activation) {
+        this.inputCount = inputCount;
+        this.outputCount = outputCount;
+        this.activation = activation;
+    }
+
+    /**
+     * Compiles the network of every client. Call this once per generation,
+     * after the population evolved. Cache entries of genomes that are no
+     * longer in the population are dropped.
+     *
+     * @param clients The clients of the new generation.
+     * @return the compiled network of each client, or null where the client
+     *         must be evaluated directly.
+     */
+    public CompiledNetwork[] compileAll(List<Client> clients) {
+        compiled = 0;
+        reused = 0;
+        rejected = 0;
+
+        Map<Genome, Entry> next = new IdentityHashMap<>(clients.size() * 2);
+        CompiledNetwork[] networks = new CompiledNetwork[clients.size()];
+        for (int i = 0; i < clients.size(); i++) {
+            Client client = clients.get(i);
+            Genome genome = client.getGenome();
+            long fingerprint = fingerprint(genome);
+
+            Entry entry = cache.get(genome);
+            if (entry != null && entry.fingerprint == fingerprint) {
+                reused++;
+            } else {
+                entry = new Entry(fingerprint, compile(client));
+                if (entry.network == null) {
+                    rejected++;
+                } else {
+                    compiled++;
+                }
+            }
+
+            next.put(genome, entry);
+            networks[i] = entry.network;
+        }
+
+        cache = next;
+        return networks;
+    }
+
+    /**
+     * Returns how many networks the last {@link #compileAll(List)} compiled.
+     *
+     * @return the number of newly compiled networks.
+     */
+    public int getCompiled() {
+        return compiled;
+    }
+
+    /**
+     * Returns how many networks the last {@link #compileAll(List)} reused
+     * from the previous generation.
+     *
+     * @return the number of reused networks.
+     */
+    public int getReused() {
+        return reused;
+    }
+
+    /**
+     * Returns how many clients the last {@link #compileAll(List)} could not
+     * compile, and that fall back to {@link Client#calculate(float[])}.
+     *
+     * @return the number of rejected networks.
+     */
+    public int getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Returns why the first client that could not be compiled since the last
+     * call was rejected, and forgets it, so the next rejection is kept again.
+     *
+     * @return the reason, or null if no client was rejected since the last
+     *         call.
+     */
+    public @Nullable String pollRejection() {
+        String rejection = this.rejection;
+        this.rejection = null;
+        return rejection;
+    }
+
+    /**
+     * Compiles the network of a single client and checks that it matches
+     * {@link Client#calculate(float[])}, without touching the cache used by
+     * {@link #compileAll(List)}. Use this when one client's genome is
+     * replaced between generations.
+     *
+     * @param client The client to compile.
+     * @return the compiled network, or null if the client must be evaluated
+     *         directly.
+     */
+    public @Nullable CompiledNetwork compile(Client client) {
+        CompiledNetwork network;
+        try {
+            network = compile(client.getGenome());
+        } catch (IllegalArgumentException e) {
+            reject("its genome cannot be compiled: " + e.getMessage());
+            return null;
+        }
+
+        if (network == null)
+            return null;
+        if (!verify(network, client)) {
+            reject("its compiled network does not match the reference network");
+            return null;
+        }
+        return network;
+    }
+
+    private void reject(String reason) {
+        if (rejection == null)
+            rejection = reason;
+    }
+
+    /**
+     * Compiles the given genome. The first {@code inputCount} nodes (by id)
+     * are the inputs, and the next {@code outputCount} nodes are the outputs.
+     *
+     * @param genome The genome to compile.
+     * @return the compiled network, or null if the genome has a cycle.
+     * @throws IllegalArgumentException if the genome is malformed, e.g. a
+     *                                  connection leads into an input node.
+     */
+    public @Nullable CompiledNetwork compile(Genome genome) {
+        return compile(NetworkGraph.of(genome));
+    }
+
+    /**
+     * Compiles the given node graph, like {@link #compile(Genome)}. Graphs
+     * are not checked against a reference network, since there is none.
+     *
+     * @param graph The graph to compile.
+     * @return the compiled network, or null if the graph has a cycle.
+     * @throws IllegalArgumentException if the graph is malformed, e.g. a
+     *                                  connection leads into an input node.
+     */
+    public @Nullable CompiledNetwork compile(NetworkGraph graph) {
+        int[] nodes = new int[graph.getNodeCount()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = graph.getNode(i);
+        }
+        Arrays.sort(nodes);
+        if (nodes.length < inputCount + outputCount)
+            throw new IllegalArgumentException("Genome has " + nodes.length + " nodes, expected at least " + (inputCount + outputCount));
+
+        // Local index of every node, inputs first
+        Map<Integer, Integer> localIds = new HashMap<>();
+        for (int i = 0; i < nodes.length; i++) {
+            if (localIds.put(nodes[i], i) != null)
+                throw new IllegalArgumentException("Duplicate node " + nodes[i]);
+        }
+
+        // Incoming enabled connections of every computed node
+        int computed = nodes.length - inputCount;
+        List<List<Integer>> incoming = new ArrayList<>(computed);
+        for (int i = 0; i < computed; i++) {
+            incoming.add(new ArrayList<>());
+        }
+        int[] pending = new int[computed];
+        int connectionCount = 0;
+        for (int connection = 0; connection < graph.getConnectionCount(); connection++) {
+            if (!graph.isEnabled(connection))
+                continue;
+
+            int to = localId(localIds, graph.getTo(connection));
+            int from = localId(localIds, graph.getFrom(connection));
+            if (to < inputCount)
+                throw new IllegalArgumentException("Connection into input node " + graph.getTo(connection));
+
+            incoming.get(to - inputCount).add(connection);
+            if (from >= inputCount)
+                pending[to - inputCount]++;
+            connectionCount++;
+        }
+
+        // Kahn's algorithm over the computed nodes
+        List<List<Integer>> outgoing = new ArrayList<>(computed);
+        for (int i = 0; i < computed; i++) {
+            outgoing.add(new ArrayList<>());
+        }
+        for (int i = 0; i < computed; i++) {
+            for (int connection : incoming.get(i)) {
+                int from = localIds.get(graph.getFrom(connection));
+                if (from >= inputCount)
+                    outgoing.get(from - inputCount).add(i);
+            }
+        }
+        Deque<Integer> ready = new ArrayDeque<>();
+        for (int i = 0; i < computed; i++) {
+            if (pending[i] == 0)
+                ready.add(i);
+        }
+        int[] order = new int[computed];
+        int[] slots = new int[nodes.length];
+        for (int i = 0; i < inputCount; i++) {
+            slots[i] = i;
+        }
+        int sorted = 0;
+        while (!ready.isEmpty()) {
+            int node = ready.poll();
+            slots[inputCount + node] = inputCount + sorted;
+            order[sorted++] = node;
+            for (int next : outgoing.get(node)) {
+                if (--pending[next] == 0)
+                    ready.add(next);
+            }
+        }
+        if (sorted != computed)
+            return null;
+
+        // Flatten into arrays in topological order
+        int[] offsets = new int[computed + 1];
+        int[] sources = new int[connectionCount];
+        float[] weights = new float[connectionCount];
+        int connection = 0;
+        for (int i = 0; i < computed; i++) {
+            offsets[i] = connection;
+            for (int gene : incoming.get(order[i])) {
+                sources[connection] = slots[localIds.get(graph.getFrom(gene))];
+                weights[connection] = graph.getWeight(gene);
+                connection++;
+            }
+        }
+        offsets[computed] = connection;
+
+        int[] outputSlots = new int[outputCount];
+        for (int i = 0; i < outputCount; i++) {
+            outputSlots[i] = slots[inputCount + i];
+        }
+        return new CompiledNetwork(inputCount, offsets, sources, weights, outputSlots, activation);
+    }
+
+    private static int localId(Map<Integer, Integer> localIds, int node) {
+        Integer id = localIds.get(node);
+        if (id == null)
+            throw new IllegalArgumentException("Connection to unknown node " + node);
+        return id;
+    }
+
+    /**
+     * Checks the compiled network against the reference network of the
+     * client on a few random inputs.
+     *
+     * @param network The compiled network.
+     * @param client The client the network was compiled from.
+     * @return true if every output matched.
+     */
+    public boolean verify(CompiledNetwork network, Client client) {
+        SplittableRandom random = new SplittableRandom(VERIFY_SAMPLES);
+        float[] inputs = new float[inputCount];
+        float[] values = new float[network.getValueCount()];
+        float[] outputs = new float[outputCount];
+        for (int sample = 0; sample < VERIFY_SAMPLES; sample++) {
+            for (int i = 0; i < inputCount; i++) {
+                inputs[i] = (float) random.nextDouble();
+            }
+
+            network.evaluate(inputs, values, outputs);
+            float[] expected = client.calculate(Arrays.copyOf(inputs, inputCount));
+            for (int i = 0; i < outputCount; i++) {
+                if (Math.abs(expected[i] - outputs[i]) > VERIFY_TOLERANCE)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private static long fingerprint(Genome genome) {
+        long hash = 1;
+        for (ConnectionGene connection : genome.getConnections()) {
+            if (!connection.getEnabled())
+                continue;
+
+            hash = 31 * hash + connection.getFrom().getId();
+            hash = 31 * hash + connection.getTo().getId();
+            hash = 31 * hash + Float.floatToIntBits(connection.getWeight());
+        }
+        hash = 31 * hash + genome.getNodes().size();
+        return hash;
+    }
+
+    private record Entry(long fingerprint, @Nullable CompiledNetwork network) {
+    }
+}
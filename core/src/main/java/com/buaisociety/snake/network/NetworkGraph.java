@@ -0,0 +1,257 @@
+package com.buaisociety.snake.network;
+
+import com.cjcrafter.neat.genome.ConnectionGene;
+import com.cjcrafter.neat.genome.Genome;
+import com.cjcrafter.neat.genome.NodeGene;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The node graph of a {@link Genome}, without anything else the genome
+ * holds: the id of every node, and the two ends, weight and enabled flag of
+ * every connection. That is all {@link NetworkCompiler#compile(NetworkGraph)}
+ * needs, so a graph can be sent somewhere else and compiled there without
+ * Java serialization.
+ *
+ * <p>Written by {@link #write(ByteBuffer)}, all big-endian:
+ * <pre>
+ *     int nodeCount, int[nodeCount] node ids
+ *     int connectionCount, repeated: int from, int to, float weight, byte enabled
+ * </pre>
+ */
+public final class NetworkGraph {
+
+    private static final int CONNECTION_BYTES = 4 + 4 + 4 + 1;
+
+    private final int[] nodes;
+    private final int[] from;
+    private final int[] to;
+    private final float[] weights;
+    private final boolean[] enabled;
+
+    /**
+     * Creates a graph. Node ids are not checked until the graph is compiled.
+     *
+     * @param nodes The id of every node.
+     * @param from The id of the node every connection starts at.
+     * @param to The id of the node every connection leads into.
+     * @param weights The weight of every connection.
+     * @param enabled Whether every connection is enabled.
+     */
+    public NetworkGraph(int[] nodes, int[] from, int[] to, float[] weights, boolean[] enabled) {
+        if (from.length != to.length || from.length != weights.length || from.length != enabled.length)
+            throw new IllegalArgumentException("Every connection needs a from, to, weight and enabled flag");
+
+        this.nodes = nodes;
+        this.from = from;
+        this.to = to;
+        this.weights = weights;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Copies the node graph of the given genome.
+     *
+     * @param genome The genome to copy.
+     * @return the graph of the genome.
+     */
+    public static NetworkGraph of(Genome genome) {
+        int[] nodes = new int[genome.getNodes().size()];
+        int node = 0;
+        for (NodeGene gene : genome.getNodes()) {
+            nodes[node++] = gene.getId();
+        }
+
+        int count = genome.getConnections().size();
+        int[] from = new int[count];
+        int[] to = new int[count];
+        float[] weights = new float[count];
+        boolean[] enabled = new boolean[count];
+        int connection = 0;
+        for (ConnectionGene gene : genome.getConnections()) {
+            from[connection] = gene.getFrom().getId();
+            to[connection] = gene.getTo().getId();
+            weights[connection] = gene.getWeight();
+            enabled[connection] = gene.getEnabled();
+            connection++;
+        }
+        return new NetworkGraph(nodes, from, to, weights, enabled);
+    }
+
+    /**
+     * Returns the number of nodes.
+     *
+     * @return the number of nodes.
+     */
+    public int getNodeCount() {
+        return nodes.length;
+    }
+
+    /**
+     * Returns the id of the given node.
+     *
+     * @param node The index of the node.
+     * @return the node id.
+     */
+    public int getNode(int node) {
+        return nodes[node];
+    }
+
+    /**
+     * Returns the number of connections, enabled or not.
+     *
+     * @return the number of connections.
+     */
+    public int getConnectionCount() {
+        return from.length;
+    }
+
+    /**
+     * Returns the id of the node the given connection starts at.
+     *
+     * @param connection The index of the connection.
+     * @return the id of the source node.
+     */
+    public int getFrom(int connection) {
+        return from[connection];
+    }
+
+    /**
+     * Returns the id of the node the given connection leads into.
+     *
+     * @param connection The index of the connection.
+     * @return the id of the target node.
+     */
+    public int getTo(int connection) {
+        return to[connection];
+    }
+
+    /**
+     * Returns the weight of the given connection.
+     *
+     * @param connection The index of the connection.
+     * @return the weight.
+     */
+    public float getWeight(int connection) {
+        return weights[connection];
+    }
+
+    /**
+     * Returns whether the given connection is enabled.
+     *
+     * @param connection The index of the connection.
+     * @return whether the connection is enabled.
+     */
+    public boolean isEnabled(int connection) {
+        return enabled[connection];
+    }
+
+    /**
+     * Returns the number of bytes {@link #write(ByteBuffer)} writes.
+     *
+     * @return the encoded size.
+     */
+    public int getEncodedSize() {
+        return 4 + 4 * nodes.length + 4 + CONNECTION_BYTES * from.length;
+    }
+
+    /**
+     * Writes the graph.
+     *
+     * @param buffer The buffer to write to.
+     */
+    public void write(ByteBuffer buffer) {
+        buffer.putInt(nodes.length);
+        for (int node : nodes) {
+            buffer.putInt(node);
+        }
+        buffer.putInt(from.length);
+        for (int i = 0; i < from.length; i++) {
+            buffer.putInt(from[i]).putInt(to[i]).putFloat(weights[i]).put((byte) (enabled[i] ? 1 : 0));
+        }
+    }
+
+    /**
+     * Reads a graph written by {@link #write(ByteBuffer)}. Counts are checked
+     * against the bytes left in the buffer, so a corrupt graph cannot
+     * allocate more than the buffer holds.
+     *
+     * @param buffer The buffer to read from.
+     * @return the graph.
+     * @throws IllegalArgumentException if the buffer does not hold a graph.
+     */
+    public static NetworkGraph read(ByteBuffer buffer) {
+        int nodeCount = readCount(buffer, 4);
+        int[] nodes = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            nodes[i] = buffer.getInt();
+        }
+
+        int count = readCount(buffer, CONNECTION_BYTES);
+        int[] from = new int[count];
+        int[] to = new int[count];
+        float[] weights = new float[count];
+        boolean[] enabled = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            from[i] = buffer.getInt();
+            to[i] = buffer.getInt();
+            weights[i] = buffer.getFloat();
+            enabled[i] = switch (buffer.get()) {
+                case 0 -> false;
+                case 1 -> true;
+                default -> throw new IllegalArgumentException("Invalid enabled flag of connection " + i);
+            };
+        }
+        return new NetworkGraph(nodes, from, to, weights, enabled);
+    }
+
+    /**
+     * Returns whether the given object is a graph with the same nodes and
+     * connections, in the same order.
+     *
+     * @param o The object to compare to.
+     * @return whether the graphs are equal.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof NetworkGraph other))
+            return false;
+
+        return Arrays.equals(nodes, other.nodes)
+            && Arrays.equals(from, other.from)
+            && Arrays.equals(to, other.to)
+            && Arrays.equals(weights, other.weights)
+            && Arrays.equals(enabled, other.enabled);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Arrays.hashCode(nodes);
+        result = 31 * result + Arrays.hashCode(from);
+        result = 31 * result + Arrays.hashCode(to);
+        result = 31 * result + Arrays.hashCode(weights);
+        result = 31 * result + Arrays.hashCode(enabled);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "NetworkGraph{" +
+            "nodes=" + nodes.length +
+            ", connections=" + from.length +
+            '}';
+    }
+
+    private static int readCount(ByteBuffer buffer, int bytesPerEntry) {
+        if (buffer.remaining() < 4)
+            throw new IllegalArgumentException("Graph is truncated");
+
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / bytesPerEntry)
+            throw new IllegalArgumentException("Graph is truncated, expected " + count + " entries");
+        return count;
+    }
+}
@@ -0,0 +1,295 @@
+package com.buaisociety.snake.replay;
+
+import com.buaisociety.snake.Board;
+import com.buaisociety.snake.DeathCause;
+import com.buaisociety.snake.Direction;
+import com.buaisociety.snake.StarvationBudget;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A recorded game: the seed and rules the board started with, and every
+ * direction the snake moved in, packed 2 bits per move. Since food placement
+ * only depends on the seed (see {@link com.buaisociety.snake.Seeds}), that
+ * is enough to replay the game exactly.
+ *
+ * <p>Replays are encoded as a fixed 56 byte header followed by the packed
+ * moves, so a hundred moves cost 25 bytes.
+ */
+public final class Replay {
+
+    /**
+     * Why a game was recorded.
+     */
+    public enum Kind {
+
+        /**
+         * The highest scoring game of its generation.
+         */
+        BEST,
+
+        /**
+         * The lowest scoring game of its generation.
+         */
+        WORST
+    }
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 56;
+
+    private final Kind kind;
+    private final int generation;
+    private final int client;
+    private final int episode;
+    private final long seed;
+    private final int width;
+    private final int height;
+    private final int startingLength;
+    private final StarvationBudget starvationBudget;
+    private final int ticks;
+    private final double score;
+    private final int moveCount;
+    private final byte[] moves;
+
+    private Replay(Kind kind, int generation, int client, int episode, long seed, int width, int height,
+                   int startingLength, StarvationBudget starvationBudget, int ticks, double score,
+                   int moveCount, byte[] moves) {
+        this.kind = kind;
+        this.generation = generation;
+        this.client = client;
+        this.episode = episode;
+        this.seed = seed;
+        this.width = width;
+        this.height = height;
+        this.startingLength = startingLength;
+        this.starvationBudget = starvationBudget;
+        this.ticks = ticks;
+        this.score = score;
+        this.moveCount = moveCount;
+        this.moves = moves;
+    }
+
+    /**
+     * Captures the recorded moves of a finished game. The board's simulation
+     * must have been recording since the board was reset.
+     *
+     * @param board The board the game was played on.
+     * @param kind Why the game is recorded.
+     * @param generation The generation the game was played in.
+     * @param client The index of the client that played.
+     * @param episode The index of the episode.
+     * @param score The score of the game.
+     * @return the replay of the game.
+     */
+    public static Replay of(Board board, Kind kind, int generation, int client, int episode, double score) {
+        int moveCount = board.getMoveCount();
+        byte[] moves = new byte[(moveCount + 3) >>> 2];
+        for (int i = 0; i < moveCount; i++) {
+            moves[i >>> 2] |= (byte) (board.getMove(i).ordinal() << ((i & 3) << 1));
+        }
+
+        // Games that starved or won ended on an update that did not move
+        boolean endedInPlace = board.isWon() || board.getSnake().getDeathCause() == DeathCause.STARVATION;
+        int ticks = moveCount + (endedInPlace ? 1 : 0);
+        return new Replay(kind, generation, client, episode, board.getSeed(), board.getWidth(), board.getHeight(),
+            Board.STARTING_LENGTH, board.getSimulation().getStarvationBudget(), ticks, score, moveCount, moves);
+    }
+
+    /**
+     * Returns why the game was recorded.
+     *
+     * @return the kind of replay.
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Returns the generation the game was played in.
+     *
+     * @return the generation.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Returns the index of the client that played the game.
+     *
+     * @return the index of the client.
+     */
+    public int getClient() {
+        return client;
+    }
+
+    /**
+     * Returns the index of the episode.
+     *
+     * @return the index of the episode.
+     */
+    public int getEpisode() {
+        return episode;
+    }
+
+    /**
+     * Returns the seed the board was reset with.
+     *
+     * @return the seed of the board.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the width of the board.
+     *
+     * @return the width of the board.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the board.
+     *
+     * @return the height of the board.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the max length the snake started with.
+     *
+     * @return the starting length of the snake.
+     */
+    public int getStartingLength() {
+        return startingLength;
+    }
+
+    /**
+     * Returns the starvation budget the game was played with.
+     *
+     * @return the starvation budget.
+     */
+    public StarvationBudget getStarvationBudget() {
+        return starvationBudget;
+    }
+
+    /**
+     * Returns the number of times the board was updated before the game
+     * ended (or was cut off).
+     *
+     * @return the number of ticks of the game.
+     */
+    public int getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Returns the score the game was recorded with.
+     *
+     * @return the recorded score.
+     */
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * Returns the number of recorded moves.
+     *
+     * @return the number of recorded moves.
+     */
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * Returns the direction of the given move.
+     *
+     * @param index The index of the move, starting at 0.
+     * @return the direction of the move.
+     */
+    public Direction getMove(int index) {
+        if (index < 0 || index >= moveCount)
+            throw new IndexOutOfBoundsException("Move " + index + " out of bounds for " + moveCount + " moves");
+
+        return DIRECTIONS[(moves[index >>> 2] >>> ((index & 3) << 1)) & 3];
+    }
+
+    /**
+     * Returns the number of bytes {@link #write(ByteBuffer)} writes.
+     *
+     * @return the encoded size of the replay.
+     */
+    public int getEncodedSize() {
+        return HEADER_BYTES + moves.length;
+    }
+
+    /**
+     * Writes the replay to the buffer.
+     *
+     * @param buffer The buffer to write to, with at least
+     *               {@link #getEncodedSize()} bytes remaining.
+     */
+    public void write(ByteBuffer buffer) {
+        boolean unlimited = starvationBudget == StarvationBudget.UNLIMITED;
+        buffer.put((byte) VERSION).put((byte) kind.ordinal());
+        buffer.putInt(generation).putInt(client).putInt(episode).putLong(seed);
+        buffer.putShort((short) width).putShort((short) height).putShort((short) startingLength);
+        buffer.putInt(unlimited ? -1 : starvationBudget.getBaseSteps());
+        buffer.putFloat(unlimited ? 0f : starvationBudget.getStepsPerSegment());
+        buffer.putFloat(unlimited ? 0f : starvationBudget.getStepsPerCell());
+        buffer.putInt(ticks).putDouble(score).putInt(moveCount);
+        buffer.put(moves);
+    }
+
+    /**
+     * Reads a replay written by {@link #write(ByteBuffer)}.
+     *
+     * @param buffer The buffer to read from.
+     * @return the replay.
+     */
+    public static Replay read(ByteBuffer buffer) {
+        int version = buffer.get();
+        if (version != VERSION)
+            throw new IllegalArgumentException("Unknown replay version " + version);
+
+        Kind kind = Kind.values()[buffer.get()];
+        int generation = buffer.getInt();
+        int client = buffer.getInt();
+        int episode = buffer.getInt();
+        long seed = buffer.getLong();
+        int width = buffer.getShort();
+        int height = buffer.getShort();
+        int startingLength = buffer.getShort();
+        int baseSteps = buffer.getInt();
+        float stepsPerSegment = buffer.getFloat();
+        float stepsPerCell = buffer.getFloat();
+        StarvationBudget starvationBudget = baseSteps < 0
+            ? StarvationBudget.UNLIMITED
+            : new StarvationBudget(baseSteps, stepsPerSegment, stepsPerCell);
+        int ticks = buffer.getInt();
+        double score = buffer.getDouble();
+        int moveCount = buffer.getInt();
+        byte[] moves = new byte[(moveCount + 3) >>> 2];
+        buffer.get(moves);
+        return new Replay(kind, generation, client, episode, seed, width, height, startingLength,
+            starvationBudget, ticks, score, moveCount, moves);
+    }
+
+    @Override
+    public String toString() {
+        return "Replay{" +
+            "kind=" + kind +
+            ", generation=" + generation +
+            ", client=" + client +
+            ", episode=" + episode +
+            ", seed=" + seed +
+            ", ticks=" + ticks +
+            ", score=" + score +
+            ", moves=" + moveCount +
+            '}';
+    }
+}
@@ -0,0 +1,80 @@
+package com.buaisociety.snake.replay;
+
+import com.buaisociety.snake.Board;
+import com.buaisociety.snake.Simulation;
+import com.buaisociety.snake.behaviors.ReplayBehavior;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Rebuilds recorded games. A replayed board is reset with the recorded seed
+ * and a {@link ReplayBehavior}, so food spawns in the same places and the
+ * snake makes the same moves as in the recorded game:
+ * <pre>{@code
+ *     Board board = ReplayPlayer.createBoard(replay);
+ *     for (int tick = 0; tick < replay.getTicks(); tick++) {
+ *         board.update();  // or render it between ticks to watch the game
+ *     }
+ * }</pre>
+ *
+ * <p>Running the class checks every replay in a replay file and prints
+ * whether it reproduces the recorded score.
+ */
+public final class ReplayPlayer {
+
+    private ReplayPlayer() {
+    }
+
+    /**
+     * Creates a board in the starting state of the recorded game.
+     *
+     * @param replay The recorded game.
+     * @return a board that plays back the recorded game.
+     */
+    public static Board createBoard(Replay replay) {
+        if (replay.getStartingLength() != Board.STARTING_LENGTH)
+            throw new IllegalArgumentException("Replay starts with length " + replay.getStartingLength() + ", boards start with " + Board.STARTING_LENGTH);
+
+        Simulation simulation = new Simulation(replay.getWidth(), replay.getHeight(), 1);
+        simulation.setStarvationBudget(replay.getStarvationBudget());
+        Board board = simulation.getBoard(0);
+        board.reset(new ReplayBehavior(replay), replay.getSeed());
+        return board;
+    }
+
+    /**
+     * Plays back the whole recorded game.
+     *
+     * @param replay The recorded game.
+     * @return the board in the state the recorded game ended in.
+     */
+    public static Board play(Replay replay) {
+        Board board = createBoard(replay);
+        for (int tick = 0; tick < replay.getTicks() && !board.isFinished(); tick++) {
+            board.update();
+        }
+        return board;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1)
+            throw new IllegalArgumentException("Usage: ReplayPlayer <replays.bin>");
+
+        List<Replay> replays = ReplayRecorder.readAll(Path.of(args[0]));
+        int mismatches = 0;
+        for (Replay replay : replays) {
+            Board board = play(replay);
+            int eaten = board.getSnake().getMaxLength() - Board.STARTING_LENGTH;
+            boolean matches = eaten == replay.getScore();
+            if (!matches)
+                mismatches++;
+
+            System.out.printf("Generation %d %s: client %d, %d moves in %d bytes, recorded score %.1f, replayed %d food%s%n",
+                replay.getGeneration(), replay.getKind(), replay.getClient(), replay.getMoveCount(),
+                replay.getEncodedSize(), replay.getScore(), eaten, matches ? "" : " (MISMATCH)");
+        }
+        System.out.println(replays.size() + " replays, " + mismatches + " mismatches");
+    }
+}
@@ -0,0 +1,100 @@
+package com.buaisociety.snake.replay;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Appends {@link Replay}s to a file. Every replay is stored as its length
+ * followed by its encoding (see {@link Replay#write(ByteBuffer)}), so the
+ * file can be appended to across generations and restarts and read back with
+ * {@link #readAll(Path)}.
+ */
+public class ReplayRecorder {
+
+    private final Path file;
+
+    /**
+     * Creates a recorder that appends to the given file, creating it when
+     * the first replay is recorded.
+     *
+     * @param file The file to append to.
+     */
+    public ReplayRecorder(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns the file replays are appended to.
+     *
+     * @return the replay file.
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Appends the given replays to the file in a single write. If the write
+     * fails part way, the file is truncated back to its old length where
+     * possible, so later appends stay readable.
+     *
+     * @param replays The replays to append.
+     * @throws IOException if the file cannot be written.
+     */
+    public void append(Replay... replays) throws IOException {
+        int size = 0;
+        for (Replay replay : replays) {
+            size += 4 + replay.getEncodedSize();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (Replay replay : replays) {
+            buffer.putInt(replay.getEncodedSize());
+            replay.write(buffer);
+        }
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            long length = channel.size();
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                try {
+                    channel.truncate(length);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Reads every replay in the given file.
+     *
+     * @param file The replay file.
+     * @return the replays, in the order they were recorded.
+     * @throws IOException if the file cannot be read.
+     */
+    public static List<Replay> readAll(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        List<Replay> replays = new ArrayList<>();
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt();
+            if (length > buffer.remaining())
+                break; // The last write was cut off
+
+            ByteBuffer record = buffer.slice(buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            replays.add(Replay.read(record));
+        }
+        return replays;
+    }
+}
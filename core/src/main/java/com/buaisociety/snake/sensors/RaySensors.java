@@ -0,0 +1,220 @@
+package com.buaisociety.snake.sensors;
+
+import com.buaisociety.snake.Board;
+import com.buaisociety.snake.Direction;
+import com.buaisociety.snake.NeighborTable;
+import com.buaisociety.snake.Snake;
+import com.buaisociety.snake.arena.Arena;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Casts rays from the head of a snake, relative to the direction it is moving
+ * in, and writes what each ray sees into a network input buffer. Every
+ * configured {@link Ray} reports every configured {@link Reading}, so the
+ * number of network inputs is {@code rays * readings} (see
+ * {@link #getInputCount()}). Inputs are laid out ray by ray:
+ * <pre>{@code
+ *     RaySensors sensors = RaySensors.all();
+ *     float[] inputs = new float[sensors.getInputCount()];
+ *     sensors.sense(snake, inputs);  // [left body, left wrap, left food, forward body, ...]
+ * }</pre>
+ *
+ * <p>Each reading is {@code 1 / distance}, where distance is the number of
+ * steps from the head, so nearby things produce large inputs. Rays travel one
+ * lap around the board; a reading is 0 when the ray sees nothing. Sensing
+ * walks the board's {@link NeighborTable} and never allocates, and a
+ * {@code RaySensors} has no mutable state, so one instance can be shared by
+ * every snake.
+ */
+public class RaySensors {
+
+    /**
+     * A direction to cast a ray in, relative to the snake's heading.
+     */
+    public enum Ray {
+        LEFT,
+        FORWARD,
+        RIGHT;
+
+        /**
+         * Returns the absolute direction of this ray for a snake moving in
+         * the given direction.
+         *
+         * @param heading the direction the snake is moving in.
+         * @return the absolute direction of the ray.
+         */
+        public Direction apply(Direction heading) {
+            return switch (this) {
+                case LEFT -> heading.left();
+                case FORWARD -> heading;
+                case RIGHT -> heading.right();
+            };
+        }
+    }
+
+    /**
+     * Something a ray measures the distance to.
+     */
+    public enum Reading {
+
+        /**
+         * The distance to the first body segment hit by the ray.
+         */
+        BODY,
+
+        /**
+         * The distance until the ray wraps around the edge of the board.
+         */
+        WRAP,
+
+        /**
+         * The distance to the food, if the ray passes over it.
+         */
+        FOOD
+    }
+
+    private final Ray[] rays;
+    private final boolean body;
+    private final boolean wrap;
+    private final boolean food;
+    private final int readingCount;
+
+    /**
+     * Creates sensors that cast the given rays and report the given readings.
+     *
+     * @param rays The rays to cast.
+     * @param readings The readings each ray reports.
+     */
+    public RaySensors(Set<Ray> rays, Set<Reading> readings) {
+        if (rays.isEmpty() || readings.isEmpty())
+            throw new IllegalArgumentException("Need at least 1 ray and 1 reading");
+
+        this.rays = EnumSet.copyOf(rays).toArray(new Ray[0]);
+        this.body = readings.contains(Reading.BODY);
+        this.wrap = readings.contains(Reading.WRAP);
+        this.food = readings.contains(Reading.FOOD);
+        this.readingCount = readings.size();
+    }
+
+    /**
+     * Returns sensors that cast every {@link Ray} and report every
+     * {@link Reading}.
+     *
+     * @return sensors with every ray and reading.
+     */
+    public static RaySensors all() {
+        return new RaySensors(EnumSet.allOf(Ray.class), EnumSet.allOf(Reading.class));
+    }
+
+    /**
+     * Returns the number of values written by {@link #sense(Snake, float[])},
+     * which is the number of inputs the network needs.
+     *
+     * @return the number of network inputs.
+     */
+    public int getInputCount() {
+        return rays.length * readingCount;
+    }
+
+    /**
+     * Casts every ray from the head of the given snake and writes the
+     * readings into {@code inputs}, starting at index 0.
+     *
+     * @param snake The snake to sense for.
+     * @param inputs The buffer to write to, at least {@link #getInputCount()} long.
+     */
+    public void sense(Snake snake, float[] inputs) {
+        Board board = snake.getBoard();
+        NeighborTable neighbors = board.getNeighbors();
+        Direction heading = snake.getCurrentDirection();
+        int head = snake.getHeadCell();
+        int foodCell = board.getFoodCell();
+        int headX = neighbors.getX(head);
+        int headY = neighbors.getY(head);
+
+        int index = 0;
+        for (Ray ray : rays) {
+            Direction direction = ray.apply(heading);
+
+            // Walk one lap around the board, stopping at the first body
+            // segment. We can stop early once everything was found.
+            int lap = direction.getDx() != 0 ? board.getWidth() : board.getHeight();
+            int bodyDistance = 0;
+            int foodDistance = 0;
+            int cell = head;
+            for (int distance = 1; distance < lap; distance++) {
+                cell = neighbors.next(cell, direction);
+                if (foodDistance == 0 && cell == foodCell) {
+                    foodDistance = distance;
+                }
+                if (snake.containsCell(cell)) {
+                    bodyDistance = distance;
+                    break;
+                }
+            }
+
+            if (body)
+                inputs[index++] = bodyDistance == 0 ? 0f : 1f / bodyDistance;
+            if (wrap)
+                inputs[index++] = 1f / wrapDistance(direction, headX, headY, board.getWidth(), board.getHeight());
+            if (food)
+                inputs[index++] = foodDistance == 0 ? 0f : 1f / foodDistance;
+        }
+    }
+
+    /**
+     * Casts every ray from the head of one snake of an arena and writes the
+     * readings into {@code inputs}, like {@link #sense(Snake, float[])}. The
+     * body reading sees the segments of every snake in the arena, and the
+     * food reading sees the nearest food on the ray.
+     *
+     * @param arena The arena the snake is in.
+     * @param snake The index of the snake in the arena.
+     * @param inputs The buffer to write to, at least {@link #getInputCount()} long.
+     */
+    public void sense(Arena arena, int snake, float[] inputs) {
+        NeighborTable neighbors = arena.getNeighbors();
+        Direction heading = arena.getDirection(snake);
+        int head = arena.getHead(snake);
+        int headX = neighbors.getX(head);
+        int headY = neighbors.getY(head);
+
+        int index = 0;
+        for (Ray ray : rays) {
+            Direction direction = ray.apply(heading);
+
+            int lap = direction.getDx() != 0 ? arena.getWidth() : arena.getHeight();
+            int bodyDistance = 0;
+            int foodDistance = 0;
+            int cell = head;
+            for (int distance = 1; distance < lap; distance++) {
+                cell = neighbors.next(cell, direction);
+                if (foodDistance == 0 && arena.isFood(cell)) {
+                    foodDistance = distance;
+                }
+                if (arena.getOwner(cell) >= 0) {
+                    bodyDistance = distance;
+                    break;
+                }
+            }
+
+            if (body)
+                inputs[index++] = bodyDistance == 0 ? 0f : 1f / bodyDistance;
+            if (wrap)
+                inputs[index++] = 1f / wrapDistance(direction, headX, headY, arena.getWidth(), arena.getHeight());
+            if (food)
+                inputs[index++] = foodDistance == 0 ? 0f : 1f / foodDistance;
+        }
+    }
+
+    private static int wrapDistance(Direction direction, int x, int y, int width, int height) {
+        return switch (direction) {
+            case UP -> height - y;
+            case DOWN -> y + 1;
+            case LEFT -> x + 1;
+            case RIGHT -> width - x;
+        };
+    }
+}
@@ -0,0 +1,52 @@
+package com.buaisociety.snake;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Runs test code against a temporary file that is deleted afterwards, for
+ * the tests that write something to disk and read it back.
+ */
+public final class TempFiles {
+
+    /**
+     * Does something with a file.
+     *
+     * @param <T> The type of the result.
+     */
+    @FunctionalInterface
+    public interface FileAction<T> {
+
+        /**
+         * Does something with the given file.
+         *
+         * @param file The temporary file, which exists and is empty.
+         * @return the result.
+         * @throws IOException if the file cannot be read or written.
+         */
+        T apply(Path file) throws IOException;
+    }
+
+    private TempFiles() {
+    }
+
+    /**
+     * Creates an empty temporary file, runs the action with it and deletes
+     * it, even if the action fails.
+     *
+     * @param suffix The suffix of the file name, e.g. {@code ".bin"}.
+     * @param action The action to run.
+     * @param <T> The type of the result.
+     * @return the result of the action.
+     * @throws IOException if the action fails or the file cannot be created.
+     */
+    public static <T> T with(String suffix, FileAction<T> action) throws IOException {
+        Path file = Files.createTempFile("snake", suffix);
+        try {
+            return action.apply(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
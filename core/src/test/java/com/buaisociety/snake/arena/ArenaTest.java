@@ -0,0 +1,166 @@
+package com.buaisociety.snake.arena;
+
+import com.buaisociety.snake.DeathCause;
+import com.buaisociety.snake.Direction;
+import com.buaisociety.snake.NeighborTable;
+import com.buaisociety.snake.Seeds;
+import com.buaisociety.snake.TickExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks how {@link Arena} resolves collisions. Every collision test places
+ * two snakes that always move in one direction next to a cell no other snake
+ * is near, and runs a single tick.
+ */
+class ArenaTest {
+
+    private static final int SIZE = 16;
+
+    @Test
+    void equallyLongSnakesBothDieHeadOn() {
+        try (TickExecutor executor = new TickExecutor(1)) {
+            Arena arena = arena(executor, Direction.RIGHT, Direction.LEFT);
+            int target = freeCell(arena);
+            NeighborTable neighbors = arena.getNeighbors();
+            arena.place(0, Direction.RIGHT, body(arena, neighbors.next(target, Direction.LEFT), Direction.RIGHT, 3));
+            arena.place(1, Direction.LEFT, body(arena, neighbors.next(target, Direction.RIGHT), Direction.LEFT, 3));
+
+            assertFalse(arena.tick());
+            assertEquals(DeathCause.COLLISION, arena.getDeathCause(0));
+            assertEquals(DeathCause.COLLISION, arena.getDeathCause(1));
+            assertEquals(-1, arena.getOwner(target));
+        }
+    }
+
+    @Test
+    void longerSnakeWinsHeadOn() {
+        // Both ways around, since the outcome must not depend on the snake order
+        for (int longer = 0; longer < 2; longer++) {
+            try (TickExecutor executor = new TickExecutor(1)) {
+                Arena arena = arena(executor, Direction.RIGHT, Direction.LEFT);
+                int target = freeCell(arena);
+                NeighborTable neighbors = arena.getNeighbors();
+                arena.place(0, Direction.RIGHT, body(arena, neighbors.next(target, Direction.LEFT), Direction.RIGHT, longer == 0 ? 4 : 3));
+                arena.place(1, Direction.LEFT, body(arena, neighbors.next(target, Direction.RIGHT), Direction.LEFT, longer == 1 ? 4 : 3));
+
+                assertTrue(arena.tick());
+                int shorter = 1 - longer;
+                assertTrue(arena.isAlive(longer));
+                assertEquals(target, arena.getHead(longer));
+                assertEquals(longer, arena.getOwner(target));
+                assertEquals(DeathCause.COLLISION, arena.getDeathCause(shorter));
+                assertEquals(1, arena.getAliveCount());
+            }
+        }
+    }
+
+    @Test
+    void movingIntoTailIsCollision() {
+        try (TickExecutor executor = new TickExecutor(1)) {
+            Arena arena = arena(executor, Direction.RIGHT, Direction.DOWN);
+            int head = freeCell(arena);
+            NeighborTable neighbors = arena.getNeighbors();
+            int[] first = body(arena, head, Direction.RIGHT, 3);
+            int tail = first[first.length - 1];
+            arena.place(0, Direction.RIGHT, first);
+            arena.place(1, Direction.DOWN, body(arena, neighbors.next(tail, Direction.UP), Direction.DOWN, 3));
+
+            // The tail moves out of the way this tick, but was taken when it started
+            assertTrue(arena.tick());
+            assertTrue(arena.isAlive(0));
+            assertEquals(neighbors.next(head, Direction.RIGHT), arena.getHead(0));
+            assertEquals(DeathCause.COLLISION, arena.getDeathCause(1));
+        }
+    }
+
+    @Test
+    void resultDoesNotDependOnThreads() {
+        int[] serial = play(1);
+        assertArrayEquals(serial, play(4));
+        assertArrayEquals(serial, play(7));
+    }
+
+    /**
+     * Plays a crowded game of snakes that wander by a hash of the arena
+     * state, and returns the score, death cause and last head of every snake.
+     */
+    private static int[] play(int threads) {
+        ArenaController wander = (arena, snake) -> {
+            long hash = Seeds.mix64(Seeds.split(arena.getHead(snake), arena.getTicks()) + snake);
+            return Direction.values()[(int) (hash >>> 62)];
+        };
+        int snakes = 96;
+        ArenaController[] controllers = new ArenaController[snakes];
+        Arrays.fill(controllers, wander);
+
+        try (TickExecutor executor = new TickExecutor(threads)) {
+            Arena arena = new Arena(48, 48, snakes, executor);
+            arena.setFoodCount(24);
+            arena.reset(controllers, 0, snakes, 42L);
+            while (arena.tick() && arena.getTicks() < 500) {
+                // Play until every snake is dead
+            }
+
+            int[] result = new int[1 + 3 * snakes];
+            result[0] = arena.getTicks();
+            for (int snake = 0; snake < snakes; snake++) {
+                result[1 + 3 * snake] = arena.getScore(snake);
+                result[2 + 3 * snake] = arena.getDeathCause(snake).ordinal();
+                result[3 + 3 * snake] = arena.getHead(snake);
+            }
+            return result;
+        }
+    }
+
+    private static Arena arena(TickExecutor executor, Direction first, Direction second) {
+        Arena arena = new Arena(SIZE, SIZE, 2, executor);
+        arena.setFoodCount(1);
+        ArenaController[] controllers = {(a, snake) -> first, (a, snake) -> second};
+        arena.reset(controllers, 0, 2, 1L);
+        return arena;
+    }
+
+    /**
+     * Returns a cell at least 5 cells away from where every snake started,
+     * so the snakes of a test can be placed around it.
+     */
+    private static int freeCell(Arena arena) {
+        NeighborTable neighbors = arena.getNeighbors();
+        search:
+        for (int cell = 0; cell < SIZE * SIZE; cell++) {
+            for (int snake = 0; snake < arena.getSnakeCount(); snake++) {
+                int head = arena.getHead(snake);
+                if (distance(neighbors.getX(cell), neighbors.getX(head)) <= 4
+                    && distance(neighbors.getY(cell), neighbors.getY(head)) <= 4)
+                    continue search;
+            }
+            return cell;
+        }
+        throw new AssertionError("No cell is far enough from the snakes");
+    }
+
+    private static int distance(int a, int b) {
+        int distance = Math.abs(a - b);
+        return Math.min(distance, SIZE - distance);
+    }
+
+    /**
+     * Returns the cells of a straight snake, head first, that moves in the
+     * given direction.
+     */
+    private static int[] body(Arena arena, int head, Direction direction, int length) {
+        int[] cells = new int[length];
+        cells[0] = head;
+        for (int i = 1; i < length; i++) {
+            cells[i] = arena.getNeighbors().next(cells[i - 1], direction.opposite());
+        }
+        return cells;
+    }
+}
@@ -0,0 +1,88 @@
+package com.buaisociety.snake.checkpoint;
+
+import com.buaisociety.snake.Evaluation;
+import com.buaisociety.snake.StarvationBudget;
+import com.buaisociety.snake.TempFiles;
+import com.buaisociety.snake.network.NetworkGraph;
+import com.cjcrafter.neat.Neat;
+import com.cjcrafter.neat.NeatImpl;
+import com.cjcrafter.neat.Parameters;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Writes checkpoints to disk and reads them back.
+ */
+class CheckpointTest {
+
+    private static final int CLIENTS = 10;
+
+    @Test
+    void checkpointSurvivesWriteAndRead() throws IOException {
+        Neat neat = new NeatImpl(4, 3, CLIENTS, new Parameters());
+        Evaluation evaluation = new Evaluation(5, true, Evaluation.Aggregate.QUANTILE, 0.75);
+        StarvationBudget budget = new StarvationBudget(50, 2f, 0.5f);
+        Checkpoint checkpoint = new Checkpoint(12, -7L, 31.5, evaluation, budget, CheckpointWriter.serialize(neat));
+
+        for (boolean compress : new boolean[]{true, false}) {
+            Checkpoint read = roundTrip(checkpoint.toBytes(compress));
+            assertEquals(12, read.getGeneration());
+            assertEquals(-7L, read.getRunSeed());
+            assertEquals(31.5, read.getBestScore());
+            assertEquals(evaluation.toString(), read.getEvaluation().toString());
+            assertEquals(budget.toString(), read.getStarvationBudget().toString());
+
+            Neat restored = read.getNeat();
+            assertEquals(CLIENTS, restored.getClients().size());
+            for (int i = 0; i < CLIENTS; i++) {
+                assertEquals(NetworkGraph.of(neat.getClients().get(i).getGenome()),
+                    NetworkGraph.of(restored.getClients().get(i).getGenome()));
+            }
+        }
+    }
+
+    @Test
+    void truncatedCheckpointIsRejected() throws IOException {
+        Neat neat = new NeatImpl(4, 3, CLIENTS, new Parameters());
+        byte[] bytes = checkpoint(CheckpointWriter.serialize(neat)).toBytes(true);
+
+        int step = Math.max(1, bytes.length / 64);
+        for (int length = 0; length < bytes.length; length += step) {
+            byte[] truncated = Arrays.copyOf(bytes, length);
+            assertThrows(IOException.class, () -> roundTrip(truncated));
+        }
+        assertThrows(IOException.class, () -> roundTrip(Arrays.copyOf(bytes, bytes.length - 1)));
+    }
+
+    @Test
+    void populationOutsideFilterIsRejected() throws IOException {
+        // Any class outside of neat4j and java.lang/java.util must not be instantiated
+        byte[] population = CheckpointWriter.serialize(URI.create("https://example.com"));
+        Checkpoint read = roundTrip(checkpoint(population).toBytes(true));
+        assertThrows(InvalidClassException.class, read::getNeat);
+    }
+
+    @Test
+    void unlimitedStarvationSurvivesWriteAndRead() throws IOException {
+        Neat neat = new NeatImpl(4, 3, CLIENTS, new Parameters());
+        Checkpoint checkpoint = new Checkpoint(1, 2L, 3.0, Evaluation.SINGLE, StarvationBudget.UNLIMITED,
+            CheckpointWriter.serialize(neat));
+        assertEquals(StarvationBudget.UNLIMITED, roundTrip(checkpoint.toBytes(false)).getStarvationBudget());
+    }
+
+    private static Checkpoint checkpoint(byte[] population) {
+        return new Checkpoint(1, 2L, 3.0, Evaluation.SINGLE, StarvationBudget.DEFAULT, population);
+    }
+
+    private static Checkpoint roundTrip(byte[] bytes) throws IOException {
+        return TempFiles.with(".ckpt", file -> Checkpoint.read(Files.write(file, bytes)));
+    }
+}
@@ -0,0 +1,131 @@
+package com.buaisociety.snake.distributed;
+
+import com.buaisociety.snake.Evaluation;
+import com.buaisociety.snake.StarvationBudget;
+import com.buaisociety.snake.network.CompiledNetwork;
+import com.buaisociety.snake.network.NetworkCompiler;
+import com.buaisociety.snake.network.NetworkGraph;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that an {@link EvaluationBatch} survives being encoded and decoded,
+ * and that a worker rejects frames that do not hold a batch.
+ */
+class EvaluationBatchTest {
+
+    private static final int INPUTS = 2;
+    private static final int OUTPUTS = 1;
+
+    @Test
+    void batchSurvivesEncodeAndDecode() throws IOException {
+        NetworkGraph[] graphs = {graph(0.5f), graph(-1.25f), graph(3f)};
+        EvaluationBatch batch = new EvaluationBatch(17L, -42L, 250,
+            new Evaluation(3, true, Evaluation.Aggregate.QUANTILE, 0.25),
+            new StarvationBudget(40, 1.5f, 0.25f), new int[]{4, 9, 31}, graphs);
+
+        EvaluationBatch decoded = EvaluationBatch.decode(body(batch));
+        assertEquals(17L, decoded.getId());
+        assertEquals(-42L, decoded.getGenerationSeed());
+        assertEquals(250, decoded.getMaxTicks());
+        assertEquals(3, decoded.getEvaluation().getEpisodes());
+        assertTrue(decoded.getEvaluation().isCommonRandomNumbers());
+        assertEquals(Evaluation.Aggregate.QUANTILE, decoded.getEvaluation().getAggregate());
+        assertEquals(0.25, decoded.getEvaluation().getQuantile());
+        assertEquals(40, decoded.getStarvationBudget().getBaseSteps());
+        assertEquals(1.5f, decoded.getStarvationBudget().getStepsPerSegment());
+        assertEquals(0.25f, decoded.getStarvationBudget().getStepsPerCell());
+
+        assertEquals(graphs.length, decoded.getCount());
+        NetworkCompiler compiler = new NetworkCompiler(INPUTS, OUTPUTS);
+        for (int i = 0; i < graphs.length; i++) {
+            assertEquals(batch.getClient(i), decoded.getClient(i));
+            assertEquals(graphs[i], decoded.getNetwork(i));
+            assertArrayEquals(evaluate(compiler.compile(graphs[i])), evaluate(compiler.compile(decoded.getNetwork(i))));
+        }
+    }
+
+    @Test
+    void unlimitedStarvationSurvivesEncodeAndDecode() throws IOException {
+        EvaluationBatch batch = new EvaluationBatch(1L, 2L, 0, Evaluation.SINGLE, StarvationBudget.UNLIMITED,
+            new int[0], new NetworkGraph[0]);
+
+        EvaluationBatch decoded = EvaluationBatch.decode(body(batch));
+        assertEquals(StarvationBudget.UNLIMITED, decoded.getStarvationBudget());
+        assertEquals(0, decoded.getCount());
+    }
+
+    @Test
+    void truncatedBatchIsRejected() {
+        EvaluationBatch batch = new EvaluationBatch(5L, 6L, 7, Evaluation.SINGLE, StarvationBudget.DEFAULT,
+            new int[]{0, 1}, new NetworkGraph[]{graph(1f), graph(2f)});
+        ByteBuffer body = body(batch);
+
+        for (int length = 0; length < body.remaining(); length++) {
+            ByteBuffer truncated = body.duplicate().limit(body.position() + length);
+            assertThrows(IOException.class, () -> EvaluationBatch.decode(truncated));
+        }
+    }
+
+    @Test
+    void hugeCountsAreRejected() {
+        EvaluationBatch batch = new EvaluationBatch(5L, 6L, 7, Evaluation.SINGLE, StarvationBudget.DEFAULT,
+            new int[]{0}, new NetworkGraph[]{graph(1f)});
+        ByteBuffer body = body(batch);
+
+        // The client count follows the fixed size header
+        int countOffset = body.position() + 8 + 8 + 4 + (4 + 1 + 1 + 8) + (4 + 4 + 4);
+        body.putInt(countOffset, Integer.MAX_VALUE);
+        assertThrows(IOException.class, () -> EvaluationBatch.decode(body.duplicate()));
+
+        // The node count of the first graph follows the client index
+        ByteBuffer nodes = body(batch);
+        nodes.putInt(countOffset + 4 + 4, Integer.MAX_VALUE);
+        assertThrows(IOException.class, () -> EvaluationBatch.decode(nodes));
+    }
+
+    @Test
+    void unknownAggregateIsRejected() {
+        ByteBuffer body = body(new EvaluationBatch(5L, 6L, 7, Evaluation.SINGLE, StarvationBudget.DEFAULT,
+            new int[0], new NetworkGraph[0]));
+        body.put(body.position() + 8 + 8 + 4 + 4 + 1, (byte) 100);
+        assertThrows(IOException.class, () -> EvaluationBatch.decode(body));
+    }
+
+    /**
+     * Returns the body of the encoded frame, positioned after its type.
+     */
+    private static ByteBuffer body(EvaluationBatch batch) {
+        ByteBuffer frame = batch.encode();
+        assertEquals(frame.remaining() - 4, frame.getInt());
+        assertEquals(Protocol.BATCH, frame.get());
+        return frame;
+    }
+
+    /**
+     * Returns a network with one hidden node and a disabled connection that
+     * skips it.
+     */
+    private static NetworkGraph graph(float weight) {
+        int[] nodes = {0, 1, 2, 3};
+        int[] from = {0, 1, 3, 0};
+        int[] to = {3, 3, 2, 2};
+        float[] weights = {weight, -weight, 0.75f, 10f};
+        boolean[] enabled = {true, true, true, false};
+        return new NetworkGraph(nodes, from, to, weights, enabled);
+    }
+
+    private static float[] evaluate(CompiledNetwork network) {
+        float[] values = new float[network.getValueCount()];
+        float[] outputs = new float[OUTPUTS];
+        network.evaluate(new float[]{0.3f, 0.9f}, values, outputs);
+        return outputs;
+    }
+}
@@ -0,0 +1,131 @@
+package com.buaisociety.snake.replay;
+
+import com.buaisociety.snake.Board;
+import com.buaisociety.snake.Direction;
+import com.buaisociety.snake.Simulation;
+import com.buaisociety.snake.StarvationBudget;
+import com.buaisociety.snake.TempFiles;
+import com.buaisociety.snake.behaviors.Behavior;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Records games, writes them with a {@link ReplayRecorder}, reads them back
+ * and checks that {@link ReplayPlayer} plays the exact same games.
+ */
+class ReplayTest {
+
+    private static final int SIZE = 24;
+    private static final int MAX_TICKS = 10_000;
+
+    @Test
+    void replaysSurviveWriteAndRead() throws IOException {
+        Replay[] recorded = {
+            record(new FoodSeeker(), StarvationBudget.DEFAULT, 11L, Replay.Kind.BEST),
+            record(new Straight(), new StarvationBudget(40, 0f, 0f), 12L, Replay.Kind.WORST)
+        };
+
+        List<Replay> read = TempFiles.with(".bin", file -> {
+            ReplayRecorder recorder = new ReplayRecorder(file);
+            recorder.append(recorded[0]);
+            recorder.append(recorded[1]);
+            return ReplayRecorder.readAll(file);
+        });
+
+        assertEquals(recorded.length, read.size());
+        for (int i = 0; i < recorded.length; i++) {
+            assertSameReplay(recorded[i], read.get(i));
+        }
+    }
+
+    @Test
+    void replayReproducesScore() throws IOException {
+        for (long seed = 1; seed <= 8; seed++) {
+            Behavior behavior = seed % 2 == 0 ? new Straight() : new FoodSeeker();
+            Replay replay = roundTrip(record(behavior, new StarvationBudget(60, 2f, 0f), seed, Replay.Kind.BEST));
+
+            Board board = ReplayPlayer.play(replay);
+            assertTrue(board.isFinished());
+            assertEquals(replay.getScore(), board.getSnake().getMaxLength() - Board.STARTING_LENGTH);
+        }
+    }
+
+    /**
+     * Plays a game to the end on a recording board and captures it.
+     */
+    private static Replay record(Behavior behavior, StarvationBudget budget, long seed, Replay.Kind kind) {
+        Simulation simulation = new Simulation(SIZE, SIZE, 1);
+        simulation.setStarvationBudget(budget);
+        simulation.setRecording(true);
+        Board board = simulation.getBoard(0);
+        board.reset(behavior, seed);
+        for (int tick = 0; tick < MAX_TICKS && !board.isFinished(); tick++) {
+            board.update();
+        }
+
+        assertTrue(board.isFinished());
+        int score = board.getSnake().getMaxLength() - Board.STARTING_LENGTH;
+        return Replay.of(board, kind, 7, (int) seed, 0, score);
+    }
+
+    private static Replay roundTrip(Replay replay) throws IOException {
+        List<Replay> read = TempFiles.with(".bin", file -> {
+            new ReplayRecorder(file).append(replay);
+            return ReplayRecorder.readAll(file);
+        });
+        assertEquals(1, read.size());
+        return read.get(0);
+    }
+
+    private static void assertSameReplay(Replay expected, Replay actual) {
+        assertEquals(expected.getKind(), actual.getKind());
+        assertEquals(expected.getGeneration(), actual.getGeneration());
+        assertEquals(expected.getClient(), actual.getClient());
+        assertEquals(expected.getEpisode(), actual.getEpisode());
+        assertEquals(expected.getSeed(), actual.getSeed());
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getStartingLength(), actual.getStartingLength());
+        assertEquals(expected.getStarvationBudget().getBaseSteps(), actual.getStarvationBudget().getBaseSteps());
+        assertEquals(expected.getStarvationBudget().getStepsPerSegment(), actual.getStarvationBudget().getStepsPerSegment());
+        assertEquals(expected.getStarvationBudget().getStepsPerCell(), actual.getStarvationBudget().getStepsPerCell());
+        assertEquals(expected.getTicks(), actual.getTicks());
+        assertEquals(expected.getScore(), actual.getScore());
+        assertEquals(expected.getMoveCount(), actual.getMoveCount());
+        for (int i = 0; i < expected.getMoveCount(); i++) {
+            assertEquals(expected.getMove(i), actual.getMove(i));
+        }
+    }
+
+    /**
+     * Heads straight for the food, which eats a few pieces before it runs
+     * into itself.
+     */
+    private static final class FoodSeeker extends Behavior {
+        @Override
+        public Direction getDirection() {
+            Board board = snake.getBoard();
+            int dx = board.getFoodLocation().x() - snake.getHeadX();
+            int dy = board.getFoodLocation().y() - snake.getHeadY();
+            if (Math.abs(dx) >= Math.abs(dy))
+                return dx > 0 ? Direction.RIGHT : Direction.LEFT;
+            return dy > 0 ? Direction.UP : Direction.DOWN;
+        }
+    }
+
+    /**
+     * Never turns, so it only eats food that lies in its way and usually
+     * starves.
+     */
+    private static final class Straight extends Behavior {
+        @Override
+        public Direction getDirection() {
+            return snake.getCurrentDirection();
+        }
+    }
+}
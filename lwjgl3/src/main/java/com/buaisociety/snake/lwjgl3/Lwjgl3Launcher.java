@@ -4,15 +4,20 @@ import com.badlogic.gdx.backends.lwjgl3.Lwjgl3Application;
 import com.badlogic.gdx.backends.lwjgl3.Lwjgl3ApplicationConfiguration;
 import com.buaisociety.snake.Main;
 
-/** Launches the desktop (LWJGL3) application. */
+import java.util.Arrays;
+
+/**
+ * Launches the desktop (LWJGL3) application. Pass {@code --steady-state} to
+ * train with steady-state evolution instead of whole generations.
+ */
 public class Lwjgl3Launcher {
     public static void main(String[] args) {
         if (StartupHelper.startNewJvmIfRequired()) return; // This handles macOS support and helps on Windows.
-        createApplication();
+        createApplication(Arrays.asList(args).contains("--steady-state"));
     }
 
-    private static Lwjgl3Application createApplication() {
-        return new Lwjgl3Application(new Main(), getDefaultConfiguration());
+    private static Lwjgl3Application createApplication(boolean steadyState) {
+        return new Lwjgl3Application(new Main(steadyState), getDefaultConfiguration());
     }
 
     private static Lwjgl3ApplicationConfiguration getDefaultConfiguration() {